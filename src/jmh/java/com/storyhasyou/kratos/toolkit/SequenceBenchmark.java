@@ -0,0 +1,76 @@
+package com.storyhasyou.kratos.toolkit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequence 多线程取号基准测试
+ * <p>
+ * legacy 为CAS之前的实现：synchronized 方法、返回装箱的 Long；lockFree 为当前实现。
+ * 两者都受12位序列每毫秒4096个的上限约束，差异体现在线程数超过核数时监视器排队的开销。
+ * 运行：{@code ./gradlew jmh -Pjmh.includes=Sequence}
+ * </p>
+ *
+ * @author fangxi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(Threads.MAX)
+public class SequenceBenchmark {
+
+    private final Sequence sequence = new Sequence(1L, 1L, false, 5L, false);
+    private final LegacySequence legacySequence = new LegacySequence(1L, 1L);
+
+    @Benchmark
+    public Long legacy() {
+        return legacySequence.nextId();
+    }
+
+    @Benchmark
+    public long lockFree() {
+        return sequence.nextId();
+    }
+
+    /**
+     * CAS之前的实现，只保留非随机序列、不使用缓存时钟的路径
+     */
+    private static final class LegacySequence {
+
+        private static final long START_TIME = 1519740777809L;
+        private static final long SEQUENCE_MASK = ~(-1L << 12);
+
+        private final long dataCenterId;
+        private final long workerId;
+        private long sequence = 0L;
+        private long lastTimestamp = -1L;
+
+        private LegacySequence(long dataCenterId, long workerId) {
+            this.dataCenterId = dataCenterId;
+            this.workerId = workerId;
+        }
+
+        private synchronized Long nextId() {
+            long currentTimestamp = System.currentTimeMillis();
+            if (lastTimestamp == currentTimestamp) {
+                sequence = (sequence + 1) & SEQUENCE_MASK;
+                if (sequence == 0) {
+                    while (currentTimestamp <= lastTimestamp) {
+                        currentTimestamp = System.currentTimeMillis();
+                    }
+                }
+            } else {
+                sequence = 0L;
+            }
+            lastTimestamp = currentTimestamp;
+            return ((currentTimestamp - START_TIME) << 22) | (dataCenterId << 20) | (workerId << 12) | sequence;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.storyhasyou.kratos.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IdUtils 时间 ID 基准测试
+ * <p>
+ * legacy 为之前的实现：每次都用 DateTimeFormatter 格式化 LocalDateTime 再拼接 ID 字符串；
+ * cached 为当前实现：秒级前缀按秒缓存，毫秒和 ID 数字直接写入一个定长字节数组。
+ * 运行：{@code ./gradlew jmh -Pjmh.includes=IdUtils}
+ * </p>
+ *
+ * @author fangxi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdUtilsBenchmark {
+
+    @Benchmark
+    public String legacy() {
+        return DateUtils.now().format(IdUtils.MILLISECOND) + IdUtils.getId();
+    }
+
+    @Benchmark
+    public String cached() {
+        return IdUtils.getTimeId();
+    }
+}
@@ -0,0 +1,61 @@
+package com.storyhasyou.kratos.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.StandardReflectionParameterNameDiscoverer;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SpelUtils 表达式解析基准测试
+ * <p>
+ * legacy 为缓存之前的实现：每次调用都新建解析器、重新解析表达式、重新发现参数名；
+ * cached 为当前实现。运行：{@code ./gradlew jmh -Pjmh.includes=SpelUtils}，gc profiler 会同时输出每次调用的分配量。
+ * </p>
+ *
+ * @author fangxi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpelUtilsBenchmark {
+
+    private static final String KEY = "'order:' + #userId + ':' + #orderNo";
+
+    private Method method;
+    private Object[] args;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        method = SpelUtilsBenchmark.class.getMethod("submitOrder", Long.class, String.class);
+        args = new Object[]{10086L, "NO20240101"};
+    }
+
+    @Benchmark
+    public String legacy() {
+        String[] paraNameArr = new StandardReflectionParameterNameDiscoverer().getParameterNames(method);
+        ExpressionParser parser = new SpelExpressionParser();
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        for (int i = 0; i < paraNameArr.length && i < args.length; i++) {
+            context.setVariable(paraNameArr[i], args[i]);
+        }
+        return parser.parseExpression(KEY).getValue(context, String.class);
+    }
+
+    @Benchmark
+    public String cached() {
+        return SpelUtils.parse(method, args, KEY);
+    }
+
+    public void submitOrder(Long userId, String orderNo) {
+    }
+}
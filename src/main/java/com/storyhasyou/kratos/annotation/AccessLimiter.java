@@ -1,14 +1,23 @@
 package com.storyhasyou.kratos.annotation;
 
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+
 import java.lang.annotation.*;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * 方法级限流
+ * <p>
+ * 可以在同一个方法上声明多个，例如同时限制全局、租户和IP，所有key在一次Redis调用中原子地判断，任意一个超限都会拦截。
+ * Redis集群下多个key需要落在同一个slot，请在methodKey中使用相同的hash tag，例如 {@code "'{order}:ip:' + #ip"}
+ * </p>
+ *
  * @author fangxi
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
+@Repeatable(AccessLimiters.class)
 public @interface AccessLimiter {
 
     /**
@@ -31,4 +40,25 @@ public @interface AccessLimiter {
      */
     long timeout() default 1;
 
+    /**
+     * 限流算法，默认固定窗口。需要平滑窗口边界的突发流量时使用滑动日志或滑动窗口
+     */
+    RateLimitAlgorithmEnum algorithm() default RateLimitAlgorithmEnum.FIXED_WINDOW;
+
+    /**
+     * 令牌桶容量，即允许的最大突发请求数，仅令牌桶算法使用。小于等于0时取limit
+     */
+    long capacity() default 0;
+
+    /**
+     * 令牌桶每秒补充的令牌数，仅令牌桶算法使用。小于等于0时按 limit / timeout 换算
+     */
+    double refillPerSecond() default 0;
+
+    /**
+     * 是否从本地令牌租约中获取令牌，仅固定窗口算法生效。
+     * 开启后每个节点批量预取令牌，大部分请求无需访问Redis，代价是多节点下全局放行量可能略低于limit
+     */
+    boolean lease() default false;
+
 }
@@ -0,0 +1,17 @@
+package com.storyhasyou.kratos.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * {@link AccessLimiter} 的容器注解，同一个方法上声明多个 {@link AccessLimiter} 时由编译器自动生成
+ *
+ * @author fangxi
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AccessLimiters {
+
+    AccessLimiter[] value();
+
+}
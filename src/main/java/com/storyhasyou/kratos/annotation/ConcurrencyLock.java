@@ -1,5 +1,6 @@
 package com.storyhasyou.kratos.annotation;
 
+import com.storyhasyou.kratos.enums.LockTypeEnum;
 import com.storyhasyou.kratos.handler.concurrencylock.ConcurrencyLockCallback;
 import com.storyhasyou.kratos.handler.concurrencylock.DefaultConcurrencyLockCallback;
 
@@ -7,6 +8,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author fangxi created by 2023/10/18
@@ -21,6 +23,44 @@ public @interface ConcurrencyLock {
 
     int expireInSeconds() default 10;
 
+    /**
+     * 是否批量加锁。开启后key的SPEL结果应为集合或数组，每个元素加上prefix作为一把锁，
+     * 全部获取成功才执行方法，只支持互斥锁
+     */
+    boolean batch() default false;
+
+    /**
+     * 锁的类型，默认互斥锁。同一个key只能使用一种类型
+     */
+    LockTypeEnum type() default LockTypeEnum.EXCLUSIVE;
+
+    /**
+     * 信号量的许可数，即集群内最多同时执行的个数，只在 type = SEMAPHORE 时生效
+     */
+    int permits() default 1;
+
+    /**
+     * 是否为每次加锁生成单调递增的fencing token，方法内通过 ConcurrencyLockContext.currentFencingToken() 读取，
+     * 只对互斥锁和写锁生效。每个锁key会多一个不过期的计数器
+     */
+    boolean fencing() default false;
+
+    /**
+     * 是否由看门狗在方法执行期间自动续期。开启后 expireInSeconds 只决定持有锁的节点宕机后锁多久自动释放，
+     * 方法执行时间超过 expireInSeconds 也不会丢失锁
+     */
+    boolean watchdog() default true;
+
+    /**
+     * 锁被占用时的最长等待时间，默认不等待。等待期间由解锁通知唤醒，不轮询Redis
+     */
+    long waitTime() default 0;
+
+    /**
+     * waitTime的时间单位
+     */
+    TimeUnit waitTimeUnit() default TimeUnit.MILLISECONDS;
+
     boolean throwException() default false;
 
     String code() default "";
@@ -32,4 +72,9 @@ public @interface ConcurrencyLock {
      */
     Class<? extends ConcurrencyLockCallback> callbackClass() default DefaultConcurrencyLockCallback.class;
 
+    /**
+     * 是否在虚拟线程中异步执行回调，开启后回调的耗时不计入请求耗时，回调抛出的异常只记录日志
+     */
+    boolean asyncCallback() default false;
+
 }
@@ -0,0 +1,27 @@
+package com.storyhasyou.kratos.enums;
+
+/**
+ * 分布式锁的类型
+ *
+ * @author fangxi
+ */
+public enum LockTypeEnum {
+
+    /**
+     * 互斥锁，同一时间只有一个持有者，可重入
+     */
+    EXCLUSIVE,
+    /**
+     * 读锁，多个读者可以同时持有，与写锁互斥；写锁的持有者可以再获取读锁
+     */
+    READ,
+    /**
+     * 写锁，与读锁、写锁都互斥，可重入；读锁的持有者不能升级为写锁
+     */
+    WRITE,
+    /**
+     * 信号量，最多 permits 个持有者同时持有，每次获取占用一个许可，不可重入
+     */
+    SEMAPHORE,
+
+}
@@ -0,0 +1,27 @@
+package com.storyhasyou.kratos.enums;
+
+/**
+ * 限流算法
+ *
+ * @author fangxi
+ */
+public enum RateLimitAlgorithmEnum {
+
+    /**
+     * 固定窗口计数，窗口边界处最多可能放过 2 倍的请求
+     */
+    FIXED_WINDOW,
+    /**
+     * 滑动日志，基于ZSET记录窗口内每一次请求的时间，精确但内存占用与limit成正比
+     */
+    SLIDING_LOG,
+    /**
+     * 滑动窗口计数，按上一个窗口的剩余权重估算，内存占用恒定
+     */
+    SLIDING_WINDOW,
+    /**
+     * 令牌桶，按固定速率补充令牌，允许不超过桶容量的突发请求
+     */
+    TOKEN_BUCKET,
+
+}
@@ -1,18 +1,28 @@
 package com.storyhasyou.kratos.handler.accesslimiter;
 
 import com.storyhasyou.kratos.annotation.AccessLimiter;
-import com.storyhasyou.kratos.utils.SpelUtils;
+import com.storyhasyou.kratos.exceptions.BusinessException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * @author fangxi
@@ -22,22 +32,150 @@ import java.util.stream.Stream;
 @RequiredArgsConstructor
 public class AccessLimiterAspect {
 
-    private final AccessLimiterHandler accessLimiterHandler;
+    private final RateLimiterBackend rateLimiterBackend;
+    private final List<AccessLimiterMetrics> accessLimiterMetrics;
+    /**
+     * 异步方法限流通过后在这个执行器中执行，不占用完成限流的线程
+     */
+    private final Executor executor;
     public static final String PREFIX = "rate:limiter:";
+    /**
+     * 方法的元数据缓存，默认key、限流规则、SPEL表达式只在第一次调用时解析
+     */
+    private final Map<Method, AccessLimiterMetadata> metadataCache = new ConcurrentHashMap<>();
 
-    @Before("@annotation(accessLimiter)")
-    public void before(JoinPoint joinPoint, AccessLimiter accessLimiter) {
-        String key = SpelUtils.parse(joinPoint, accessLimiter.methodKey());
-        int limit = accessLimiter.limit();
-        TimeUnit timeUnit = accessLimiter.unit();
-        long timeout = timeUnit.toMillis(accessLimiter.timeout());
-        if (StringUtils.isBlank(key)) {
-            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-            String name = signature.getName();
-            Class<?>[] parameterTypes = signature.getParameterTypes();
-            key = name + Stream.of(parameterTypes).map(Class::getName).collect(Collectors.joining(",", "(", ")"));
-        }
-        accessLimiterHandler.limitAccess(PREFIX + key, limit, timeout);
+    /**
+     * 声明一个 {@link AccessLimiter} 时匹配注解本身，声明多个时匹配编译器生成的容器注解。
+     * 返回 {@code CompletableFuture}、{@code Mono}、{@code Flux} 的方法在订阅/完成链路中异步限流，不阻塞调用线程。
+     * <p>
+     * 异步限流由Redis客户端的I/O线程（响应式客户端）或限流用的虚拟线程完成，限流通过后方法切换到 {@link #executor} 中执行，
+     * 方法返回异步结果之前的同步代码不会阻塞Redis的I/O线程。因此异步方法不在调用线程中执行，
+     * 调用线程的ThreadLocal（请求上下文、安全上下文、MDC、事务）不会传递，需要时配置一个传递上下文的执行器
+     * （blades-of-chaos.access-limiter.executor）或者在方法中显式传参。
+     * </p>
+     */
+    @Around("@annotation(com.storyhasyou.kratos.annotation.AccessLimiter) || @annotation(com.storyhasyou.kratos.annotation.AccessLimiters)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        AccessLimiterMetadata metadata = getMetadata(joinPoint);
+        List<RateLimitRule> rules = metadata.resolve(joinPoint.getArgs());
+        return switch (metadata.returnKind()) {
+            case BLOCKING -> {
+                long start = System.nanoTime();
+                RateLimitRule blocked = rules.size() == 1
+                        ? (rateLimiterBackend.tryAcquire(rules.get(0)) ? null : rules.get(0))
+                        : rateLimiterBackend.tryAcquireAll(rules);
+                record(metadata, rules, blocked, System.nanoTime() - start);
+                if (blocked != null) {
+                    throw blocked(blocked);
+                }
+                yield joinPoint.proceed();
+            }
+            case COMPLETION_STAGE -> tryAcquireAsync(metadata, rules).toCompletableFuture().thenComposeAsync(blocked -> {
+                if (blocked != null) {
+                    return CompletableFuture.failedFuture(blocked(blocked));
+                }
+                try {
+                    return (CompletionStage<?>) joinPoint.proceed();
+                } catch (Throwable e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }, executor);
+            case MONO -> ReactorAdapter.mono(this, joinPoint, metadata, rules);
+            case FLUX -> ReactorAdapter.flux(this, joinPoint, metadata, rules);
+        };
+    }
+
+    private CompletionStage<RateLimitRule> tryAcquireAsync(AccessLimiterMetadata metadata, List<RateLimitRule> rules) {
+        long start = System.nanoTime();
+        CompletionStage<RateLimitRule> blocked;
+        if (rules.size() == 1) {
+            RateLimitRule rule = rules.get(0);
+            blocked = rateLimiterBackend.tryAcquireAsync(rule).thenApply(acquired -> acquired ? null : rule);
+        } else {
+            blocked = rateLimiterBackend.tryAcquireAllAsync(rules);
+        }
+        return blocked.thenApply(rule -> {
+            record(metadata, rules, rule, System.nanoTime() - start);
+            return rule;
+        });
+    }
+
+    /**
+     * 全部放行时每个限流各记录一次放行，被拦截时只记录拦截它的限流
+     */
+    private void record(AccessLimiterMetadata metadata, List<RateLimitRule> rules, RateLimitRule blocked, long elapsedNanos) {
+        if (accessLimiterMetrics.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            RateLimitRule rule = rules.get(i);
+            if (blocked != null && !blocked.equals(rule)) {
+                continue;
+            }
+            String limiter = metadata.limiters().get(i).name();
+            for (AccessLimiterMetrics metrics : accessLimiterMetrics) {
+                metrics.record(limiter, rule, blocked == null, elapsedNanos);
+            }
+            if (blocked != null) {
+                break;
+            }
+        }
+    }
+
+    private BusinessException blocked(RateLimitRule rule) {
+        // 被拦截了，攻击流量下逐条打印ERROR会刷屏，拦截情况通过 AccessLimiterMetrics 统计
+        log.debug("Your access is blocked, key: {}", rule.key());
+        return new BusinessException("Your access is blocked");
+    }
+
+    private AccessLimiterMetadata getMetadata(JoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        AccessLimiterMetadata metadata = metadataCache.get(method);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(method, m -> {
+                // 注解可能声明在实现类的方法上，而代理拿到的是接口方法
+                Method specificMethod = joinPoint.getTarget() == null ? m : AopUtils.getMostSpecificMethod(m, AopUtils.getTargetClass(joinPoint.getTarget()));
+                List<AccessLimiter> accessLimiters = List.copyOf(AnnotatedElementUtils.findMergedRepeatableAnnotations(specificMethod, AccessLimiter.class));
+                return AccessLimiterMetadata.of(specificMethod, accessLimiters);
+            });
+        }
+        return metadata;
+    }
+
+    /**
+     * 单独的内部类隔离reactor的依赖，classpath中没有reactor时不会被加载
+     */
+    private static final class ReactorAdapter {
+
+        private static Mono<?> mono(AccessLimiterAspect aspect, ProceedingJoinPoint joinPoint, AccessLimiterMetadata metadata, List<RateLimitRule> rules) {
+            return acquire(aspect, metadata, rules).publishOn(Schedulers.fromExecutor(aspect.executor)).flatMap(blocked -> blocked.isPresent()
+                    ? Mono.error(aspect.blocked(blocked.get()))
+                    : Mono.defer(() -> (Mono<?>) proceed(joinPoint)));
+        }
+
+        private static Flux<?> flux(AccessLimiterAspect aspect, ProceedingJoinPoint joinPoint, AccessLimiterMetadata metadata, List<RateLimitRule> rules) {
+            return acquire(aspect, metadata, rules).publishOn(Schedulers.fromExecutor(aspect.executor)).flatMapMany(blocked -> blocked.isPresent()
+                    ? Flux.error(aspect.blocked(blocked.get()))
+                    : Flux.defer(() -> (Flux<?>) proceed(joinPoint)));
+        }
+
+        /**
+         * 订阅时才限流；Mono不能发出null，所以用Optional表示被限流的规则。
+         * 限流结果在I/O线程中发出，调用方先 publishOn 切换到执行器，再订阅业务方法
+         */
+        private static Mono<Optional<RateLimitRule>> acquire(AccessLimiterAspect aspect, AccessLimiterMetadata metadata, List<RateLimitRule> rules) {
+            return Mono.fromCompletionStage(() -> aspect.tryAcquireAsync(metadata, rules).thenApply(Optional::ofNullable));
+        }
+
+        private static Object proceed(ProceedingJoinPoint joinPoint) {
+            try {
+                return joinPoint.proceed();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
     }
 
 
@@ -1,38 +1,150 @@
 package com.storyhasyou.kratos.handler.accesslimiter;
 
 import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * @author fangxi created by 2023/10/11
  */
 @SpringBootConfiguration
-@ConditionalOnClass(RedisOperations.class)
+@EnableConfigurationProperties(AccessLimiterProperties.class)
 public class AccessLimiterConfig {
 
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono", AccessLimiterConfig.class.getClassLoader());
+
+    /**
+     * 配置了 blades-of-chaos.access-limiter.backend=local，或者使用默认的redis后端但classpath中没有Redis时，使用本地内存限流。
+     * 由配置项显式选择后端，不依赖bean的注册顺序；使用自定义的 RateLimiterBackend 时把 backend 配置为其他值
+     */
     @Bean
-    public DefaultRedisScript<Boolean> redisScript() {
-        DefaultRedisScript<Boolean> redisScript = new DefaultRedisScript<>();
-        // 脚本位置
-        redisScript.setScriptText(LuaScriptConstant.RATE_LIMITER);
-        // 脚本的返回值，这里返回 boolean
-        redisScript.setResultType(Boolean.class);
-        return redisScript;
+    @Conditional(LocalBackendCondition.class)
+    public LocalRateLimiterBackend localRateLimiterBackend(AccessLimiterProperties accessLimiterProperties) {
+        AccessLimiterProperties.Local local = accessLimiterProperties.getLocal();
+        return new LocalRateLimiterBackend(local.getMaxKeys(), local.isFailOpen());
     }
 
-
     @Bean
-    public AccessLimiterHandler accessLimiterHandler(RedisTemplate<String, Object> redisTemplate, DefaultRedisScript<Boolean> redisScript) {
-        return new AccessLimiterHandler(redisTemplate, redisScript);
+    public BlockedKeyTracker blockedKeyTracker(AccessLimiterProperties accessLimiterProperties) {
+        return new BlockedKeyTracker(accessLimiterProperties.getMetrics().getHotKeyCapacity());
     }
 
     @Bean
-    public AccessLimiterAspect accessLimiterAspect(AccessLimiterHandler accessLimiterHandler) {
-        return new AccessLimiterAspect(accessLimiterHandler);
+    public AccessLimiterAspect accessLimiterAspect(RateLimiterBackend rateLimiterBackend, ObjectProvider<AccessLimiterMetrics> accessLimiterMetrics,
+                                                   AccessLimiterProperties accessLimiterProperties, BeanFactory beanFactory) {
+        // 异步方法限流通过后切换到这个执行器，不在Redis客户端的I/O线程中执行业务代码
+        String executorName = accessLimiterProperties.getExecutor();
+        Executor executor = beanFactory.containsBean(executorName) ? beanFactory.getBean(executorName, Executor.class) : Executors.newVirtualThreadPerTaskExecutor();
+        return new AccessLimiterAspect(rateLimiterBackend, accessLimiterMetrics.orderedStream().toList(), executor);
+    }
+
+    /**
+     * 本地内存限流后端的启用条件，满足任意一个内部类上的条件即可
+     */
+    static class LocalBackendCondition extends AnyNestedCondition {
+
+        LocalBackendCondition() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(prefix = "blades-of-chaos.access-limiter", name = "backend", havingValue = "local")
+        static class LocalBackend {
+        }
+
+        @ConditionalOnMissingClass("org.springframework.data.redis.core.RedisOperations")
+        @ConditionalOnProperty(prefix = "blades-of-chaos.access-limiter", name = "backend", havingValue = "redis", matchIfMissing = true)
+        static class RedisAbsent {
+        }
+    }
+
+    /**
+     * classpath中有Micrometer时，记录每个限流的放行、拦截次数和耗时
+     */
+    @SpringBootConfiguration
+    @ConditionalOnClass(MeterRegistry.class)
+    public static class MicrometerAccessLimiterConfig {
+
+        @Bean
+        public MicrometerAccessLimiterMetrics micrometerAccessLimiterMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            return new MicrometerAccessLimiterMetrics(meterRegistry);
+        }
+
+        /**
+         * 使用本地内存限流时记录key个数和key已满时新key被拒绝（或放行）的次数
+         */
+        @Bean
+        public MeterBinder localRateLimiterMeterBinder(ObjectProvider<LocalRateLimiterBackend> localRateLimiterBackend) {
+            return registry -> localRateLimiterBackend.ifAvailable(backend -> {
+                Gauge.builder("access.limiter.local.keys", backend, LocalRateLimiterBackend::size).register(registry);
+                FunctionCounter.builder("access.limiter.local.overflow", backend, LocalRateLimiterBackend::overflowCount).register(registry);
+            });
+        }
+    }
+
+    /**
+     * classpath中有actuator时，暴露被拦截最多的key
+     */
+    @SpringBootConfiguration
+    @ConditionalOnClass(Endpoint.class)
+    public static class AccessLimiterEndpointConfig {
+
+        @Bean
+        public AccessLimiterEndpoint accessLimiterEndpoint(BlockedKeyTracker blockedKeyTracker) {
+            return new AccessLimiterEndpoint(blockedKeyTracker);
+        }
+    }
+
+    /**
+     * 基于Redis的分布式限流
+     */
+    @SpringBootConfiguration
+    @ConditionalOnClass(RedisOperations.class)
+    @ConditionalOnProperty(prefix = "blades-of-chaos.access-limiter", name = "backend", havingValue = "redis", matchIfMissing = true)
+    public static class RedisAccessLimiterConfig {
+
+        @Bean
+        public DefaultRedisScript<Long> redisScript() {
+            DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+            // 脚本位置
+            redisScript.setScriptText(LuaScriptConstant.RATE_LIMITER);
+            // 脚本的返回值，放行返回0，被限流返回剩余限流毫秒
+            redisScript.setResultType(Long.class);
+            return redisScript;
+        }
+
+        @Bean
+        public PermitLeaseManager permitLeaseManager(RedisTemplate<String, Object> redisTemplate, AccessLimiterProperties accessLimiterProperties) {
+            return new PermitLeaseManager(redisTemplate, accessLimiterProperties.getLease());
+        }
+
+        @Bean
+        public AccessLimiterHandler accessLimiterHandler(RedisTemplate<String, Object> redisTemplate, DefaultRedisScript<Long> redisScript,
+                                                         PermitLeaseManager permitLeaseManager, AccessLimiterProperties accessLimiterProperties) {
+            // 有reactor时异步限流走响应式客户端，否则在虚拟线程中执行阻塞调用
+            ReactiveAccessLimiterHandler reactiveAccessLimiterHandler = REACTOR_PRESENT ? ReactiveAccessLimiterHandler.createIfSupported(redisTemplate) : null;
+            AccessLimiterProperties.BlockedCache blockedCache = accessLimiterProperties.getBlockedCache();
+            BlockedKeyCache blockedKeyCache = blockedCache.isEnabled() ? new BlockedKeyCache(blockedCache.getMaxKeys()) : null;
+            return new AccessLimiterHandler(redisTemplate, redisScript, permitLeaseManager, reactiveAccessLimiterHandler, blockedKeyCache);
+        }
     }
 }
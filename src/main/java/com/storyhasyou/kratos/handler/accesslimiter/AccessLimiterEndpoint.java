@@ -0,0 +1,44 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * 限流的actuator端点，GET /actuator/accesslimiter 查看被拦截最多的key，DELETE 清空统计
+ *
+ * @author fangxi
+ */
+@Endpoint(id = "accesslimiter")
+@RequiredArgsConstructor
+public class AccessLimiterEndpoint {
+
+    private static final int DEFAULT_TOP = 20;
+
+    private final BlockedKeyTracker blockedKeyTracker;
+
+    /**
+     * @param top 返回的个数，默认20
+     */
+    @ReadOperation
+    public HotKeyReport hotKeys(@Nullable Integer top) {
+        int n = top == null || top <= 0 ? DEFAULT_TOP : top;
+        return new HotKeyReport(blockedKeyTracker.total(), blockedKeyTracker.top(n));
+    }
+
+    @DeleteOperation
+    public void reset() {
+        blockedKeyTracker.reset();
+    }
+
+    /**
+     * @param totalBlocked 统计以来被拦截的总次数
+     * @param hotKeys      被拦截最多的key
+     */
+    public record HotKeyReport(long totalBlocked, List<BlockedKeyTracker.HotKey> hotKeys) {
+    }
+}
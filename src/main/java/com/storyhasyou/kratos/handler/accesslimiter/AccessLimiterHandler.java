@@ -1,15 +1,21 @@
 package com.storyhasyou.kratos.handler.accesslimiter;
 
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
 import com.storyhasyou.kratos.exceptions.BusinessException;
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import com.storyhasyou.kratos.utils.IdUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
-import org.springframework.data.redis.serializer.RedisSerializer;
-import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author fangxi
@@ -17,44 +23,208 @@ import java.util.List;
  */
 @Slf4j
 @RequiredArgsConstructor
-public class AccessLimiterHandler {
+public class AccessLimiterHandler implements RateLimiterBackend {
 
     private final RedisTemplate<String, Object> redisTemplate;
     /**
-     * lua脚本
+     * lua脚本，放行返回0，被限流返回剩余限流毫秒
      */
-    private final RedisScript<Boolean> rateLimitLua;
+    private final RedisScript<Long> rateLimitLua;
+    /**
+     * 本地令牌租约
+     */
+    private final PermitLeaseManager permitLeaseManager;
+    /**
+     * 响应式限流，classpath中没有reactor或者连接工厂不支持响应式时为null
+     */
+    private final ReactiveAccessLimiterHandler reactiveAccessLimiterHandler;
+    /**
+     * 被限流key的本地负缓存，关闭时为null
+     */
+    private final BlockedKeyCache blockedKeyCache;
+    /**
+     * 没有响应式客户端时，异步限流在虚拟线程中执行阻塞调用
+     */
+    private final ExecutorService asyncExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("access-limiter-async-", 0).factory());
+    /**
+     * 滑动日志lua脚本
+     */
+    private final RedisScript<Long> slidingLogLua = RedisScript.of(LuaScriptConstant.SLIDING_LOG_RATE_LIMITER, Long.class);
+    /**
+     * 滑动窗口lua脚本
+     */
+    private final RedisScript<Long> slidingWindowLua = RedisScript.of(LuaScriptConstant.SLIDING_WINDOW_RATE_LIMITER, Long.class);
+    /**
+     * 令牌桶lua脚本
+     */
+    private final RedisScript<Long> tokenBucketLua = RedisScript.of(LuaScriptConstant.TOKEN_BUCKET_RATE_LIMITER, Long.class);
+    /**
+     * 多key限流lua脚本
+     */
+    @SuppressWarnings("rawtypes")
+    private final RedisScript<List> multiRateLimitLua = RedisScript.of(LuaScriptConstant.MULTI_RATE_LIMITER, List.class);
 
     /**
      * @param key   方法
      * @param limit 限流个数，默认每秒的限流个数
      */
     public void limitAccess(String key, Integer limit, Long timeout) {
-        // 执行Lua脚本，使用JDK 21现代化API：List.of(key)替代Collections.singletonList(key)
-        // List.of()是JDK 9+引入的工厂方法，创建不可变列表，性能更优且代码更简洁
-        Boolean acquired = redisTemplate.execute(rateLimitLua, StringRedisSerializer.UTF_8, new BooleanRedisSerializer(), List.of(key), limit.toString(), timeout.toString());
-        if (Boolean.FALSE.equals(acquired)) {
-            // 被拦截了
-            log.error("Your access is blocked, key: {}", key);
+        limitAccess(key, limit, timeout, RateLimitAlgorithmEnum.FIXED_WINDOW);
+    }
+
+    /**
+     * @param key       方法
+     * @param limit     窗口内允许的请求个数
+     * @param timeout   窗口大小，毫秒
+     * @param algorithm 限流算法
+     */
+    public void limitAccess(String key, Integer limit, Long timeout, RateLimitAlgorithmEnum algorithm) {
+        limitAccess(RateLimitRule.of(key, algorithm, limit, timeout));
+    }
+
+    /**
+     * @param rule 限流规则
+     */
+    public void limitAccess(RateLimitRule rule) {
+        if (!tryAcquire(rule)) {
+            // 被拦截了，攻击流量下逐条打印ERROR会刷屏
+            log.debug("Your access is blocked, key: {}", rule.key());
             throw new BusinessException("Your access is blocked");
         }
     }
 
+    @Override
+    public boolean tryAcquire(RateLimitRule rule) {
+        if (rule.algorithm() == RateLimitAlgorithmEnum.FIXED_WINDOW && rule.lease()) {
+            return permitLeaseManager.tryAcquire(rule);
+        }
+        String key = rule.key();
+        if (isBlockedLocally(key)) {
+            return false;
+        }
+        String limit = String.valueOf(rule.limit());
+        String timeout = String.valueOf(rule.windowMillis());
+        // 执行Lua脚本，使用JDK 21现代化API：List.of(key)替代Collections.singletonList(key)
+        // List.of()是JDK 9+引入的工厂方法，创建不可变列表，性能更优且代码更简洁
+        // 脚本返回整数，不需要结果反序列化器
+        Long retryAfter = switch (rule.algorithm()) {
+            case FIXED_WINDOW -> redisTemplate.execute(rateLimitLua, StringRedisSerializer.UTF_8, null, List.of(key), limit, timeout);
+            // 同一毫秒内的多个请求需要不同的member，否则ZADD会相互覆盖
+            case SLIDING_LOG -> redisTemplate.execute(slidingLogLua, StringRedisSerializer.UTF_8, null, List.of(key), limit, timeout, IdUtils.getIdStr());
+            case SLIDING_WINDOW -> redisTemplate.execute(slidingWindowLua, StringRedisSerializer.UTF_8, null, List.of(key), limit, timeout);
+            case TOKEN_BUCKET -> redisTemplate.execute(tokenBucketLua, StringRedisSerializer.UTF_8, null, List.of(key), String.valueOf(rule.capacity()), String.valueOf(rule.refillPerSecond()));
+        };
+        return acquired(key, retryAfter);
+    }
 
-    private static class BooleanRedisSerializer implements RedisSerializer<Boolean> {
+    /**
+     * 多个规则在一次Lua调用中原子地判断，全部放行时才计数。多key模式下不使用本地令牌租约
+     */
+    @Override
+    public RateLimitRule tryAcquireAll(List<RateLimitRule> rules) {
+        if (rules.size() == 1) {
+            return tryAcquire(rules.get(0)) ? null : rules.get(0);
+        }
+        RateLimitRule blockedLocally = findBlockedLocally(rules);
+        if (blockedLocally != null) {
+            return blockedLocally;
+        }
+        List<String> keys = rules.stream().map(RateLimitRule::key).toList();
+        Object[] args = multiRateLimitArgs(rules).toArray();
+        // 脚本返回整数数组，不需要结果反序列化器
+        List<?> result = redisTemplate.execute(multiRateLimitLua, StringRedisSerializer.UTF_8, null, keys, args);
+        return blockedRule(rules, result);
+    }
+
+    /**
+     * 未开启租约时通过响应式客户端执行，否则在虚拟线程中执行阻塞调用，都不会占用调用方的线程
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(RateLimitRule rule) {
+        if (!rule.lease() && isBlockedLocally(rule.key())) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (reactiveAccessLimiterHandler != null && !rule.lease()) {
+            return reactiveAccessLimiterHandler.tryAcquire(rule).toFuture()
+                    .thenApply(retryAfter -> acquired(rule.key(), retryAfter));
+        }
+        return CompletableFuture.supplyAsync(() -> tryAcquire(rule), asyncExecutor);
+    }
 
-        @Override
-        public byte[] serialize(Boolean value) throws SerializationException {
-            return value ? new byte[]{1} : new byte[]{0};
+    @Override
+    public CompletionStage<RateLimitRule> tryAcquireAllAsync(List<RateLimitRule> rules) {
+        RateLimitRule blockedLocally = findBlockedLocally(rules);
+        if (blockedLocally != null) {
+            return CompletableFuture.completedFuture(blockedLocally);
+        }
+        if (reactiveAccessLimiterHandler != null && rules.size() > 1) {
+            return reactiveAccessLimiterHandler.tryAcquireAll(rules).toFuture()
+                    .thenApply(result -> blockedRule(rules, result));
         }
+        return CompletableFuture.supplyAsync(() -> tryAcquireAll(rules), asyncExecutor);
+    }
+
+    private boolean isBlockedLocally(String key) {
+        return blockedKeyCache != null && blockedKeyCache.isBlocked(key);
+    }
 
-        @Override
-        public Boolean deserialize(byte[] bytes) throws SerializationException {
-            if (bytes == null || bytes.length == 0) {
-                return false;
+    private RateLimitRule findBlockedLocally(List<RateLimitRule> rules) {
+        if (blockedKeyCache == null) {
+            return null;
+        }
+        for (RateLimitRule rule : rules) {
+            if (blockedKeyCache.isBlocked(rule.key())) {
+                return rule;
             }
-            return bytes[0] == 1;
         }
+        return null;
+    }
+
+    /**
+     * @param retryAfter 单key脚本的返回值，0表示放行，大于0表示剩余限流毫秒
+     */
+    private boolean acquired(String key, Long retryAfter) {
+        if (retryAfter == null || retryAfter <= 0) {
+            return true;
+        }
+        if (blockedKeyCache != null) {
+            blockedKeyCache.block(key, retryAfter);
+        }
+        return false;
+    }
+
+    /**
+     * @param result 多key脚本的返回值 {被限流的key的下标（从1开始）, 剩余限流毫秒}，下标为0表示全部放行
+     */
+    private RateLimitRule blockedRule(List<RateLimitRule> rules, List<?> result) {
+        if (result == null || result.size() < 2) {
+            return null;
+        }
+        int index = ((Number) result.get(0)).intValue();
+        if (index <= 0) {
+            return null;
+        }
+        RateLimitRule blocked = rules.get(index - 1);
+        if (blockedKeyCache != null) {
+            blockedKeyCache.block(blocked.key(), ((Number) result.get(1)).longValue());
+        }
+        return blocked;
+    }
+
+    /**
+     * 多key限流脚本的参数：唯一member，之后每个规则依次为算法、limit、窗口毫秒、令牌桶容量、令牌桶每秒补充数
+     */
+    static List<String> multiRateLimitArgs(List<RateLimitRule> rules) {
+        List<String> args = new ArrayList<>(1 + rules.size() * 5);
+        args.add(IdUtils.getIdStr());
+        for (RateLimitRule rule : rules) {
+            args.add(rule.algorithm().name());
+            args.add(String.valueOf(rule.limit()));
+            args.add(String.valueOf(rule.windowMillis()));
+            args.add(String.valueOf(rule.capacity()));
+            args.add(String.valueOf(rule.refillPerSecond()));
+        }
+        return args;
     }
 
 }
@@ -0,0 +1,128 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.annotation.AccessLimiter;
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+import com.storyhasyou.kratos.utils.SpelUtils;
+import org.springframework.expression.Expression;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 限流方法的元数据，每个方法只在第一次调用时解析一次
+ *
+ * @param parameterNames 方法的参数名
+ * @param limiters       方法上声明的每一个限流
+ * @param returnKind     方法返回值的类型，异步方法的限流不阻塞调用线程
+ * @author fangxi
+ */
+record AccessLimiterMetadata(
+        String[] parameterNames,
+        List<LimiterMetadata> limiters,
+        ReturnKind returnKind
+) {
+
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono", AccessLimiterMetadata.class.getClassLoader());
+
+    static AccessLimiterMetadata of(Method method, List<AccessLimiter> accessLimiters) {
+        String signatureKey = AccessLimiterAspect.PREFIX + method.getName()
+                + Stream.of(method.getParameterTypes()).map(Class::getName).collect(Collectors.joining(",", "(", ")"));
+        String signatureName = ClassUtils.getShortName(method.getDeclaringClass()) + "." + method.getName();
+        List<LimiterMetadata> limiters = new ArrayList<>(accessLimiters.size());
+        for (int i = 0; i < accessLimiters.size(); i++) {
+            AccessLimiter accessLimiter = accessLimiters.get(i);
+            // 同一个方法声明了多个限流时，默认key按声明顺序区分，避免不同的规则共用一个计数
+            String suffix = i == 0 ? "" : ":" + i;
+            Expression keyExpression = SpelUtils.parseExpression(method, accessLimiter.methodKey());
+            limiters.add(new LimiterMetadata(signatureName + suffix, keyExpression, buildRule(signatureKey + suffix, accessLimiter)));
+        }
+        return new AccessLimiterMetadata(SpelUtils.getParameterNames(method), List.copyOf(limiters), ReturnKind.of(method.getReturnType()));
+    }
+
+    /**
+     * 解析本次调用的限流规则
+     *
+     * @param args 方法参数
+     * @return 限流规则，顺序与方法上的声明顺序一致
+     */
+    List<RateLimitRule> resolve(Object[] args) {
+        if (limiters.size() == 1) {
+            return List.of(limiters.get(0).resolve(parameterNames, args));
+        }
+        List<RateLimitRule> rules = new ArrayList<>(limiters.size());
+        for (LimiterMetadata limiter : limiters) {
+            rules.add(limiter.resolve(parameterNames, args));
+        }
+        return rules;
+    }
+
+    private static RateLimitRule buildRule(String key, AccessLimiter accessLimiter) {
+        int limit = accessLimiter.limit();
+        long timeout = accessLimiter.unit().toMillis(accessLimiter.timeout());
+        if (accessLimiter.algorithm() != RateLimitAlgorithmEnum.TOKEN_BUCKET) {
+            return RateLimitRule.of(key, accessLimiter.algorithm(), limit, timeout).withLease(accessLimiter.lease());
+        }
+        // 未配置令牌桶参数时，容量取limit，补充速率按 limit / timeout 换算
+        long capacity = accessLimiter.capacity() > 0 ? accessLimiter.capacity() : limit;
+        double refillPerSecond = accessLimiter.refillPerSecond() > 0 ? accessLimiter.refillPerSecond() : limit * 1000D / timeout;
+        return RateLimitRule.tokenBucket(key, capacity, refillPerSecond);
+    }
+
+    enum ReturnKind {
+        /**
+         * 同步方法，在调用线程中限流
+         */
+        BLOCKING,
+        /**
+         * 返回类型声明为 {@link CompletableFuture} 或 {@link CompletionStage}
+         */
+        COMPLETION_STAGE,
+        /**
+         * 返回 {@code Mono}
+         */
+        MONO,
+        /**
+         * 返回 {@code Flux}
+         */
+        FLUX;
+
+        private static ReturnKind of(Class<?> returnType) {
+            // 只认声明为CompletionStage或CompletableFuture的方法，代理返回的是CompletableFuture；
+            // 只实现了Future的返回值无法组合，按同步方法限流
+            if (CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class)) {
+                return COMPLETION_STAGE;
+            }
+            if (REACTOR_PRESENT && returnType == Mono.class) {
+                return MONO;
+            }
+            if (REACTOR_PRESENT && returnType == Flux.class) {
+                return FLUX;
+            }
+            return BLOCKING;
+        }
+    }
+
+    /**
+     * @param name          限流的声明名称，用于统计
+     * @param keyExpression methodKey解析后的SPEL表达式
+     * @param rule          使用默认key（方法签名）的限流规则
+     */
+    record LimiterMetadata(String name, Expression keyExpression, RateLimitRule rule) {
+
+        private RateLimitRule resolve(String[] parameterNames, Object[] args) {
+            if (keyExpression == null) {
+                return rule;
+            }
+            String key = SpelUtils.evaluate(keyExpression, parameterNames, args);
+            return key == null || key.isBlank() ? rule : rule.withKey(AccessLimiterAspect.PREFIX + key);
+        }
+    }
+}
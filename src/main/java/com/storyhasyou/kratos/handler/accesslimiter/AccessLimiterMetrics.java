@@ -0,0 +1,20 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+/**
+ * 限流判定的统计扩展点，每次限流判定后由 {@link AccessLimiterAspect} 回调
+ *
+ * @author fangxi
+ */
+public interface AccessLimiterMetrics {
+
+    /**
+     * 记录一次限流判定。多个限流同时声明时，全部放行则每个限流各记录一次放行，
+     * 被拦截时只记录拦截它的那一个
+     *
+     * @param limiter      限流的声明名称（类名.方法名），取值个数等于注解声明个数，可以安全地作为指标的tag
+     * @param rule         本次调用解析出的限流规则，key可能包含SPEL解析出的用户、IP等，基数不受控
+     * @param allowed      是否放行
+     * @param elapsedNanos 限流判定耗时，纳秒
+     */
+    void record(String limiter, RateLimitRule rule, boolean allowed, long elapsedNanos);
+}
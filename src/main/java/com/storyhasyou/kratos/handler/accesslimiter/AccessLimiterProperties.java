@@ -0,0 +1,115 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 限流配置
+ *
+ * @author fangxi
+ */
+@Data
+@ConfigurationProperties(prefix = "blades-of-chaos.access-limiter")
+public class AccessLimiterProperties {
+
+    /**
+     * 限流的存储后端，redis：基于Redis的分布式限流（classpath中没有Redis时退化为本地内存限流），local：纯本地内存限流，
+     * 其他值：不注册内置后端，由应用自己提供 RateLimiterBackend bean
+     */
+    private String backend = "redis";
+
+    /**
+     * 异步方法（CompletableFuture、Mono、Flux）限流通过后执行方法的Executor的bean名称，不存在时每个任务一个虚拟线程。
+     * 方法不在调用线程中执行，需要传递ThreadLocal上下文时配置一个包装了上下文传递的Executor
+     */
+    private String executor = "namedVirtualThreadExecutor";
+
+    /**
+     * 本地内存限流配置
+     */
+    private Local local = new Local();
+
+    /**
+     * 本地令牌预取（租约）配置
+     */
+    private Lease lease = new Lease();
+
+    /**
+     * 被限流key的本地负缓存配置
+     */
+    private BlockedCache blockedCache = new BlockedCache();
+
+    /**
+     * 限流统计配置
+     */
+    private Metrics metrics = new Metrics();
+
+    @Data
+    public static class Local {
+
+        /**
+         * 本地最多保留的限流key个数，达到后只淘汰空闲的key，不会删除仍在计数的key
+         */
+        private int maxKeys = 100000;
+
+        /**
+         * key已满且没有空闲key可以淘汰时，新key是否放行。false：拒绝（默认），true：放行但不计数
+         */
+        private boolean failOpen = false;
+    }
+
+    @Data
+    public static class Lease {
+
+        /**
+         * 每次向Redis预取的最大令牌数
+         */
+        private int batchSize = 50;
+
+        /**
+         * 单次预取占窗口limit的最大比例。同一个key同时只有一次续租，每个节点最多囤积 limit * maxBatchRatio * (1 + refillRatio) 个未使用的令牌，
+         * N 个节点同时在线时，全局最多少放行这么多令牌的 N 倍，但永远不会多放行
+         */
+        private double maxBatchRatio = 0.1;
+
+        /**
+         * 本地剩余令牌低于 batch * refillRatio 时异步续租
+         */
+        private double refillRatio = 0.2;
+
+        /**
+         * 本地令牌耗尽时等待其他线程续租的最长时间，超过后拒绝，不会每个线程各自访问Redis
+         */
+        private Duration refillWait = Duration.ofMillis(50);
+
+        /**
+         * 本地最多保留的租约key个数，超过后清理已过期的租约
+         */
+        private int maxKeys = 10000;
+    }
+
+    @Data
+    public static class BlockedCache {
+
+        /**
+         * 是否开启。开启后被限流的key在剩余限流时间内直接在本地拒绝，不再访问Redis
+         */
+        private boolean enabled = true;
+
+        /**
+         * 本地最多缓存的被限流key个数，超过后清理已过期的key
+         */
+        private int maxKeys = 10000;
+    }
+
+    @Data
+    public static class Metrics {
+
+        /**
+         * 统计被拦截最多的key时最多跟踪的key个数，越大top-K越准确
+         */
+        private int hotKeyCapacity = 200;
+    }
+}
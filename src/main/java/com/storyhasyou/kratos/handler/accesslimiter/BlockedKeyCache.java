@@ -0,0 +1,81 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 被限流key的本地负缓存
+ * <p>
+ * lua脚本拒绝请求时会返回这个key至少还要被限流多少毫秒，在这段时间内不论其他节点怎么访问，
+ * 计数都只会增加不会减少，所以同一个key的后续请求可以直接在本地拒绝，不再访问Redis。
+ * 攻击流量下被拒绝的请求通常占Redis调用的绝大部分。
+ * </p>
+ *
+ * @author fangxi
+ */
+public class BlockedKeyCache {
+
+    private final int maxKeys;
+    /**
+     * key -> 本地拒绝的截止时间，{@link System#nanoTime()}
+     */
+    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * @param maxKeys 最多缓存的key个数，超过后清理已过期的key，仍然超过时不再缓存新的key
+     */
+    public BlockedKeyCache(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @param key 限流key
+     * @return 是否仍处于被限流的时间内
+     */
+    public boolean isBlocked(String key) {
+        Long until = blockedUntil.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        blockedUntil.remove(key, until);
+        return false;
+    }
+
+    /**
+     * @param key          被限流的key
+     * @param retryAfterMs lua脚本返回的剩余限流毫秒
+     */
+    public void block(String key, long retryAfterMs) {
+        if (retryAfterMs <= 0) {
+            return;
+        }
+        if (blockedUntil.size() >= maxKeys && !evictExpired()) {
+            return;
+        }
+        blockedUntil.put(key, System.nanoTime() + retryAfterMs * 1_000_000L);
+    }
+
+    public int size() {
+        return blockedUntil.size();
+    }
+
+    /**
+     * @return 清理后是否还有空间
+     */
+    private boolean evictExpired() {
+        if (evicting.compareAndSet(false, true)) {
+            try {
+                long now = System.nanoTime();
+                blockedUntil.values().removeIf(until -> now - until >= 0);
+            } finally {
+                evicting.set(false);
+            }
+        }
+        return blockedUntil.size() < maxKeys;
+    }
+}
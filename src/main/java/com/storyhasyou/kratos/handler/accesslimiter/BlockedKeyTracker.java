@@ -0,0 +1,210 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 被拦截最多的限流key，使用 Space-Saving 算法在固定内存内统计 top-K。
+ * <p>
+ * 最多跟踪 capacity 个key，新key到来且已满时替换计数最小的key，并继承它的计数作为误差。
+ * 真实计数在 [count - error, count] 之间，出现频率超过 总数 / capacity 的key一定会被跟踪到
+ * </p>
+ * <p>
+ * 攻击流量下几乎每个请求都会被拦截，所有请求线程竞争同一把锁会互相排队。因此统计分成多个分段，
+ * 每次随机选择一个空闲的分段记录，读取时再合并：同一个key的计数和误差按分段累加，
+ * 某个已满的分段没有跟踪这个key时，它在该分段的计数不超过该分段的最小计数，累加到计数和误差中，合并后的区间仍然包含真实计数。
+ * </p>
+ *
+ * @author fangxi
+ */
+public class BlockedKeyTracker implements AccessLimiterMetrics {
+
+    private final int capacity;
+    private final Stripe[] stripes;
+    private final LongAdder total = new LongAdder();
+
+    public BlockedKeyTracker(int capacity) {
+        this(capacity, Math.min(16, Runtime.getRuntime().availableProcessors()));
+    }
+
+    BlockedKeyTracker(int capacity, int stripeCount) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    @Override
+    public void record(String limiter, RateLimitRule rule, boolean allowed, long elapsedNanos) {
+        if (!allowed) {
+            offer(rule.key());
+        }
+    }
+
+    /**
+     * @param key 被拦截的key
+     */
+    public void offer(String key) {
+        total.increment();
+        int start = stripes.length == 1 ? 0 : ThreadLocalRandom.current().nextInt(stripes.length);
+        // 跳过正在被其他线程使用的分段，全部繁忙时才排队
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[(start + i) % stripes.length];
+            if (stripe.lock.tryLock()) {
+                try {
+                    stripe.offer(key);
+                } finally {
+                    stripe.lock.unlock();
+                }
+                return;
+            }
+        }
+        Stripe stripe = stripes[start];
+        stripe.lock.lock();
+        try {
+            stripe.offer(key);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * @param n 返回的个数，最多返回 capacity 个
+     * @return 被拦截次数最多的n个key，按次数降序
+     */
+    public List<HotKey> top(int n) {
+        Map<String, long[]> merged = new HashMap<>();
+        List<Long> fullStripeMins = new ArrayList<>(stripes.length);
+        List<Map<String, long[]>> snapshots = new ArrayList<>(stripes.length);
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                Map<String, long[]> snapshot = HashMap.newHashMap(stripe.counters.size());
+                stripe.counters.forEach((key, counter) -> snapshot.put(key, new long[]{counter.count, counter.error}));
+                snapshots.add(snapshot);
+                fullStripeMins.add(stripe.counters.size() < capacity ? 0L : stripe.ordered.first().count);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        for (Map<String, long[]> snapshot : snapshots) {
+            snapshot.forEach((key, value) -> merged.computeIfAbsent(key, k -> new long[2]));
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            Map<String, long[]> snapshot = snapshots.get(i);
+            long min = fullStripeMins.get(i);
+            merged.forEach((key, value) -> {
+                long[] counter = snapshot.get(key);
+                if (counter != null) {
+                    value[0] += counter[0];
+                    value[1] += counter[1];
+                } else {
+                    value[0] += min;
+                    value[1] += min;
+                }
+            });
+        }
+        return merged.entrySet().stream()
+                .map(entry -> new HotKey(entry.getKey(), entry.getValue()[0], entry.getValue()[1]))
+                .sorted(Comparator.comparingLong(HotKey::count).reversed().thenComparing(HotKey::key))
+                .limit(Math.min(n, capacity))
+                .toList();
+    }
+
+    /**
+     * @return 统计以来被拦截的总次数
+     */
+    public long total() {
+        return total.sum();
+    }
+
+    public void reset() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.counters.clear();
+                stripe.ordered.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        total.reset();
+    }
+
+    /**
+     * @param key   限流key
+     * @param count 被拦截次数的估计值，不小于真实值
+     * @param error 估计值最多比真实值多出的次数
+     */
+    public record HotKey(String key, long count, long error) {
+    }
+
+    /**
+     * 一个分段内的 Space-Saving 统计，使用 {@link ReentrantLock} 而不是 synchronized，虚拟线程等待时不占用平台线程
+     */
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final Map<String, Counter> counters;
+        /**
+         * 按计数排序，用于找到计数最小的key
+         */
+        private final TreeSet<Counter> ordered = new TreeSet<>();
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            this.counters = HashMap.newHashMap(capacity);
+        }
+
+        private void offer(String key) {
+            Counter counter = counters.get(key);
+            if (counter != null) {
+                ordered.remove(counter);
+                counter.count++;
+                ordered.add(counter);
+                return;
+            }
+            if (counters.size() < capacity) {
+                counter = new Counter(key, 1, 0);
+            } else {
+                // 替换计数最小的key，它的计数作为新key的误差
+                Counter min = ordered.pollFirst();
+                counters.remove(min.key);
+                counter = new Counter(key, min.count + 1, min.count);
+            }
+            counters.put(key, counter);
+            ordered.add(counter);
+        }
+    }
+
+    private static final class Counter implements Comparable<Counter> {
+
+        private final String key;
+        private long count;
+        private final long error;
+
+        private Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        @Override
+        public int compareTo(Counter other) {
+            int result = Long.compare(count, other.count);
+            return result != 0 ? result : key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 纯本地内存的限流实现，不依赖Redis，适用于单节点服务和测试环境
+ * <p>
+ * 每个key独立持有自己的计数状态，所有状态的更新都是无锁的CAS操作，不同key之间互不竞争。
+ * </p>
+ * <p>
+ * key的个数达到 {@code maxKeys} 后只淘汰已经空闲（状态等价于新建）的key，不会删除仍在计数的key：
+ * 删除会清空它的计数，轮换SPEL key（如按IP、用户）的客户端可以借此让自己被限流的key重新放行。
+ * 没有空闲key可以淘汰时，新key按 {@code failOpen} 处理：false直接拒绝（默认），true放行但不计数。
+ * 清理空闲key需要遍历全部key，最多每 {@link #SWEEP_INTERVAL_MILLIS} 毫秒执行一次，key轮换攻击时不会每个请求都遍历一遍。
+ * 被拒绝或放行的新key次数见 {@link #overflowCount()}。
+ * </p>
+ * <p>
+ * 多个规则（{@code @AccessLimiters}）依次获取许可，某个规则被限流时归还前面已经获取的许可，与Redis的多key脚本一样只在全部放行时计数，
+ * 被拦截的流量不会消耗全局等其他规则的额度。归还前的短暂时间内其他请求可能看到多计的一次，只会多拒绝、不会多放行。
+ * </p>
+ *
+ * @author fangxi
+ */
+public class LocalRateLimiterBackend implements RateLimiterBackend {
+
+    /**
+     * key已满时清理空闲key的最小间隔，毫秒
+     */
+    private static final long SWEEP_INTERVAL_MILLIS = 1000L;
+
+    private final int maxKeys;
+    private final boolean failOpen;
+    private final Map<String, LocalLimiter> limiters = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder overflowCount = new LongAdder();
+    private volatile long nextSweepAt;
+
+    public LocalRateLimiterBackend(int maxKeys) {
+        this(maxKeys, false);
+    }
+
+    /**
+     * @param maxKeys  最多保留的key个数
+     * @param failOpen key已满且没有空闲key可以淘汰时，新key是否放行
+     */
+    public LocalRateLimiterBackend(int maxKeys, boolean failOpen) {
+        this.maxKeys = maxKeys;
+        this.failOpen = failOpen;
+    }
+
+    @Override
+    public boolean tryAcquire(RateLimitRule rule) {
+        long now = System.currentTimeMillis();
+        LocalLimiter limiter = limiter(rule, now);
+        return limiter == null ? failOpen : limiter.tryAcquire(rule, now);
+    }
+
+    /**
+     * 依次获取许可，被限流时按相反顺序归还已经获取的许可
+     */
+    @Override
+    public RateLimitRule tryAcquireAll(List<RateLimitRule> rules) {
+        long now = System.currentTimeMillis();
+        LocalLimiter[] acquired = new LocalLimiter[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            RateLimitRule rule = rules.get(i);
+            LocalLimiter limiter = limiter(rule, now);
+            if (limiter == null ? failOpen : limiter.tryAcquire(rule, now)) {
+                acquired[i] = limiter;
+                continue;
+            }
+            for (int j = i - 1; j >= 0; j--) {
+                if (acquired[j] != null) {
+                    acquired[j].release(rules.get(j), now);
+                }
+            }
+            return rule;
+        }
+        return null;
+    }
+
+    /**
+     * 当前保留的key个数
+     *
+     * @return key个数
+     */
+    public int size() {
+        return limiters.size();
+    }
+
+    /**
+     * key已满、新key没有计数就被拒绝（或按failOpen放行）的累计次数，持续增长说明 maxKeys 偏小或者有key轮换攻击
+     *
+     * @return 累计次数
+     */
+    public long overflowCount() {
+        return overflowCount.sum();
+    }
+
+    /**
+     * @return key对应的limiter，key已满且没有空位时为null
+     */
+    private LocalLimiter limiter(RateLimitRule rule, long now) {
+        LocalLimiter limiter = limiters.get(rule.key());
+        if (limiter == null) {
+            if (limiters.size() >= maxKeys && !sweep(now)) {
+                overflowCount.increment();
+                return null;
+            }
+            limiter = limiters.computeIfAbsent(rule.key(), key -> create(rule));
+        }
+        return limiter;
+    }
+
+    private static LocalLimiter create(RateLimitRule rule) {
+        return switch (rule.algorithm()) {
+            case FIXED_WINDOW -> new FixedWindowLimiter();
+            case SLIDING_LOG -> new SlidingLogLimiter(rule.limit());
+            case SLIDING_WINDOW -> new SlidingWindowLimiter();
+            case TOKEN_BUCKET -> new TokenBucketLimiter();
+        };
+    }
+
+    /**
+     * 淘汰空闲的key，距离上一次清理不足 SWEEP_INTERVAL_MILLIS 或其他线程正在清理时直接返回
+     *
+     * @return 清理之后是否还有空位
+     */
+    private boolean sweep(long now) {
+        if (now >= nextSweepAt && evicting.compareAndSet(false, true)) {
+            try {
+                nextSweepAt = now + SWEEP_INTERVAL_MILLIS;
+                limiters.values().removeIf(limiter -> limiter.isIdle(now));
+            } finally {
+                evicting.set(false);
+            }
+        }
+        return limiters.size() < maxKeys;
+    }
+
+    private interface LocalLimiter {
+
+        boolean tryAcquire(RateLimitRule rule, long now);
+
+        /**
+         * 归还一次在 acquiredAt 时刻获取的许可，用于多个规则中后面的规则被限流时回滚；许可所在的窗口已经过去时不做处理
+         */
+        void release(RateLimitRule rule, long acquiredAt);
+
+        /**
+         * 是否已经空闲，空闲的limiter被淘汰后重新创建不会改变限流结果
+         */
+        boolean isIdle(long now);
+    }
+
+    /**
+     * 固定窗口，高32位存窗口序号，低32位存窗口内的计数
+     */
+    private static final class FixedWindowLimiter implements LocalLimiter {
+
+        private final AtomicLong state = new AtomicLong();
+        private volatile long lastWindowEnd;
+
+        @Override
+        public boolean tryAcquire(RateLimitRule rule, long now) {
+            long window = now / rule.windowMillis();
+            long windowBits = window & 0xFFFFFFFFL;
+            long current;
+            long next;
+            do {
+                current = state.get();
+                long count = (current >>> 32) == windowBits ? current & 0xFFFFFFFFL : 0;
+                if (count >= rule.limit()) {
+                    return false;
+                }
+                next = (windowBits << 32) | (count + 1);
+            } while (!state.compareAndSet(current, next));
+            lastWindowEnd = (window + 1) * rule.windowMillis();
+            return true;
+        }
+
+        @Override
+        public void release(RateLimitRule rule, long acquiredAt) {
+            long windowBits = (acquiredAt / rule.windowMillis()) & 0xFFFFFFFFL;
+            long current;
+            do {
+                current = state.get();
+                if ((current >>> 32) != windowBits || (current & 0xFFFFFFFFL) == 0) {
+                    return;
+                }
+            } while (!state.compareAndSet(current, current - 1));
+        }
+
+        @Override
+        public boolean isIdle(long now) {
+            return now >= lastWindowEnd;
+        }
+    }
+
+    /**
+     * 滑动日志，环形数组记录最近limit次放行的时间，最早的一次仍在窗口内时拒绝
+     */
+    private static final class SlidingLogLimiter implements LocalLimiter {
+
+        private final AtomicLongArray timestamps;
+        private final AtomicLong cursor = new AtomicLong();
+        private volatile long lastWindowEnd;
+
+        private SlidingLogLimiter(int limit) {
+            this.timestamps = new AtomicLongArray(Math.max(1, limit));
+            for (int i = 0; i < timestamps.length(); i++) {
+                timestamps.set(i, Long.MIN_VALUE / 2);
+            }
+        }
+
+        @Override
+        public boolean tryAcquire(RateLimitRule rule, long now) {
+            if (rule.limit() <= 0) {
+                return false;
+            }
+            int length = timestamps.length();
+            while (true) {
+                long position = cursor.get();
+                int slot = (int) (position % length);
+                if (now - timestamps.get(slot) < rule.windowMillis()) {
+                    return false;
+                }
+                if (cursor.compareAndSet(position, position + 1)) {
+                    timestamps.set(slot, now);
+                    lastWindowEnd = now + rule.windowMillis();
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 把一个记录了 acquiredAt 的位置改回空闲（时间相同的记录可以互换）；它正好是最后一次放行时把游标退回去，
+         * 否则要等游标转一圈才会用到这个位置，期间只会少放行
+         */
+        @Override
+        public void release(RateLimitRule rule, long acquiredAt) {
+            int length = timestamps.length();
+            long position = cursor.get();
+            for (long p = position - 1; p >= Math.max(0, position - length); p--) {
+                if (timestamps.compareAndSet((int) (p % length), acquiredAt, Long.MIN_VALUE / 2)) {
+                    if (p == position - 1) {
+                        cursor.compareAndSet(position, p);
+                    }
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean isIdle(long now) {
+            return now >= lastWindowEnd;
+        }
+    }
+
+    /**
+     * 滑动窗口计数，估算值 = 上一窗口计数 * 上一窗口在滑动窗口内的占比 + 当前窗口计数
+     */
+    private static final class SlidingWindowLimiter implements LocalLimiter {
+
+        private final AtomicReference<WindowState> state = new AtomicReference<>(new WindowState(0, 0, 0));
+        private volatile long lastWindowEnd;
+
+        @Override
+        public boolean tryAcquire(RateLimitRule rule, long now) {
+            long windowMillis = rule.windowMillis();
+            long window = now / windowMillis;
+            double weight = 1 - (double) (now % windowMillis) / windowMillis;
+            WindowState current;
+            WindowState next;
+            do {
+                current = state.get();
+                long previousCount;
+                long currentCount;
+                if (current.window() == window) {
+                    previousCount = current.previousCount();
+                    currentCount = current.currentCount();
+                } else if (current.window() == window - 1) {
+                    previousCount = current.currentCount();
+                    currentCount = 0;
+                } else {
+                    previousCount = 0;
+                    currentCount = 0;
+                }
+                if (previousCount * weight + currentCount + 1 > rule.limit()) {
+                    return false;
+                }
+                next = new WindowState(window, previousCount, currentCount + 1);
+            } while (!state.compareAndSet(current, next));
+            lastWindowEnd = (window + 2) * windowMillis;
+            return true;
+        }
+
+        @Override
+        public void release(RateLimitRule rule, long acquiredAt) {
+            long window = acquiredAt / rule.windowMillis();
+            WindowState current;
+            WindowState next;
+            do {
+                current = state.get();
+                if (current.window() == window && current.currentCount() > 0) {
+                    next = new WindowState(window, current.previousCount(), current.currentCount() - 1);
+                } else if (current.window() == window + 1 && current.previousCount() > 0) {
+                    next = new WindowState(current.window(), current.previousCount() - 1, current.currentCount());
+                } else {
+                    return;
+                }
+            } while (!state.compareAndSet(current, next));
+        }
+
+        @Override
+        public boolean isIdle(long now) {
+            return now >= lastWindowEnd;
+        }
+
+        private record WindowState(long window, long previousCount, long currentCount) {
+        }
+    }
+
+    /**
+     * 令牌桶，每次请求时根据距上次请求的间隔惰性补充令牌
+     */
+    private static final class TokenBucketLimiter implements LocalLimiter {
+
+        private final AtomicReference<BucketState> state = new AtomicReference<>();
+        private volatile long fullAt;
+
+        @Override
+        public boolean tryAcquire(RateLimitRule rule, long now) {
+            BucketState current;
+            BucketState next;
+            do {
+                current = state.get();
+                double tokens = current == null
+                        ? rule.capacity()
+                        : Math.min(rule.capacity(), current.tokens() + Math.max(0, now - current.timestamp()) * rule.refillPerSecond() / 1000);
+                if (tokens < 1) {
+                    return false;
+                }
+                next = new BucketState(tokens - 1, now);
+            } while (!state.compareAndSet(current, next));
+            fullAt = now + (long) Math.ceil((rule.capacity() - next.tokens()) * 1000 / rule.refillPerSecond());
+            return true;
+        }
+
+        @Override
+        public void release(RateLimitRule rule, long acquiredAt) {
+            BucketState current;
+            do {
+                current = state.get();
+                if (current == null) {
+                    return;
+                }
+            } while (!state.compareAndSet(current, new BucketState(Math.min(rule.capacity(), current.tokens() + 1), current.timestamp())));
+        }
+
+        @Override
+        public boolean isIdle(long now) {
+            return now >= fullAt;
+        }
+
+        private record BucketState(double tokens, long timestamp) {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的限流指标：
+ * <ul>
+ *     <li>access.limiter.requests{limiter, result=allowed|blocked}：放行和拦截的次数</li>
+ *     <li>access.limiter.latency{limiter}：限流判定的耗时</li>
+ * </ul>
+ * tag只使用限流的声明名称，不使用解析后的key，指标个数与注解声明个数成正比；具体被拦截的key见 {@link BlockedKeyTracker}
+ *
+ * @author fangxi
+ */
+public class MicrometerAccessLimiterMetrics implements AccessLimiterMetrics {
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final Map<String, Meters> metersCache = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * MeterRegistry在第一次记录时才获取，避免切面创建时提前初始化MeterRegistry
+     */
+    public MicrometerAccessLimiterMetrics(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public void record(String limiter, RateLimitRule rule, boolean allowed, long elapsedNanos) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            registry = meterRegistryProvider.getIfAvailable();
+            if (registry == null) {
+                return;
+            }
+            meterRegistry = registry;
+        }
+        MeterRegistry finalRegistry = registry;
+        Meters meters = metersCache.computeIfAbsent(limiter, name -> Meters.register(finalRegistry, name));
+        (allowed ? meters.allowed : meters.blocked).increment();
+        meters.latency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private record Meters(Counter allowed, Counter blocked, Timer latency) {
+
+        private static Meters register(MeterRegistry registry, String limiter) {
+            return new Meters(
+                    Counter.builder("access.limiter.requests").tag("limiter", limiter).tag("result", "allowed").register(registry),
+                    Counter.builder("access.limiter.requests").tag("limiter", limiter).tag("result", "blocked").register(registry),
+                    Timer.builder("access.limiter.latency").tag("limiter", limiter).register(registry)
+            );
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 本地令牌租约
+ * <p>
+ * 每个JVM按批次从Redis的固定窗口计数中预扣令牌，之后在本地用 {@link AtomicLong} 发放，
+ * 剩余令牌不足时在虚拟线程中异步续租，命中本地令牌的请求不再产生网络往返。
+ * </p>
+ * <p>
+ * 同一个key同时只有一次续租：本地令牌耗尽时只有一个线程访问Redis，其他线程最多等待 refillWait 后重新取令牌，
+ * 等不到就拒绝。因此每个节点囤积的未使用令牌不超过一次续租前剩余的令牌加一批，即 batch * (1 + refillRatio)。
+ * </p>
+ * <p>
+ * 预扣的令牌已经计入Redis的计数，所以全局放行量永远不会超过limit；
+ * 租约随窗口一起过期，上一个窗口没用完的令牌不会带到下一个窗口。
+ * </p>
+ *
+ * @author fangxi
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PermitLeaseManager implements AutoCloseable {
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LEASE_LUA = RedisScript.of(LuaScriptConstant.RATE_LIMITER_LEASE, List.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final AccessLimiterProperties.Lease properties;
+    private final Map<String, PermitLease> leases = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("access-limiter-lease-", 0).factory());
+
+    /**
+     * 从本地租约中获取一个令牌，本地没有令牌时同步向Redis申请一批
+     *
+     * @param rule 限流规则，只支持固定窗口
+     * @return 是否放行
+     */
+    public boolean tryAcquire(RateLimitRule rule) {
+        PermitLease lease = leases.computeIfAbsent(rule.key(), key -> new PermitLease());
+        long batch = batchSize(rule);
+        if (lease.tryTake()) {
+            if (!lease.isExhausted() && lease.permits.get() <= (long) Math.ceil(batch * properties.getRefillRatio())) {
+                refillAsync(rule, lease, batch);
+            }
+            return true;
+        }
+        long deadline = System.nanoTime() + properties.getRefillWait().toNanos();
+        while (true) {
+            if (lease.isExhausted()) {
+                // 窗口的令牌已经被全部预扣，窗口结束前再申请也拿不到
+                return false;
+            }
+            CompletableFuture<Void> refilling = new CompletableFuture<>();
+            if (lease.refilling.compareAndSet(null, refilling)) {
+                // 只有抢到续租的线程访问Redis
+                try {
+                    refill(rule, lease, batch);
+                } finally {
+                    lease.refilling.set(null);
+                    refilling.complete(null);
+                }
+                return lease.tryTake();
+            }
+            if (!awaitRefill(lease.refilling.get(), deadline)) {
+                return false;
+            }
+            if (lease.tryTake()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 停止异步续租
+     */
+    @Override
+    public void close() {
+        refillExecutor.shutdown();
+    }
+
+    /**
+     * 单次预取的令牌数，不超过 limit * maxBatchRatio，至少为1
+     */
+    long batchSize(RateLimitRule rule) {
+        long byRatio = (long) (rule.limit() * properties.getMaxBatchRatio());
+        return Math.max(1, Math.min(properties.getBatchSize(), byRatio));
+    }
+
+    /**
+     * 等待其他线程正在进行的续租
+     *
+     * @return 续租已经结束，可以重新取令牌；超过等待时间或被中断时返回false
+     */
+    private static boolean awaitRefill(CompletableFuture<Void> refilling, long deadline) {
+        if (refilling == null) {
+            // 续租刚好结束
+            return true;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return false;
+        }
+        try {
+            refilling.get(remaining, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private void refillAsync(RateLimitRule rule, PermitLease lease, long batch) {
+        CompletableFuture<Void> refilling = new CompletableFuture<>();
+        if (!lease.refilling.compareAndSet(null, refilling)) {
+            return;
+        }
+        Runnable task = () -> {
+            try {
+                refill(rule, lease, batch);
+            } catch (Exception e) {
+                log.warn("refill access limiter lease failed, key: {}", rule.key(), e);
+            } finally {
+                lease.refilling.set(null);
+                refilling.complete(null);
+            }
+        };
+        try {
+            refillExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 已经关闭，不再续租
+            lease.refilling.set(null);
+            refilling.complete(null);
+        }
+    }
+
+    private void refill(RateLimitRule rule, PermitLease lease, long batch) {
+        // 脚本返回整数数组，不需要结果反序列化器
+        List<?> result = redisTemplate.execute(LEASE_LUA, StringRedisSerializer.UTF_8, null, List.of(rule.key()),
+                String.valueOf(rule.limit()), String.valueOf(rule.windowMillis()), String.valueOf(batch));
+        if (result == null || result.size() < 2) {
+            return;
+        }
+        long granted = ((Number) result.get(0)).longValue();
+        long ttl = ((Number) result.get(1)).longValue();
+        lease.grant(granted, ttl > 0 ? ttl : rule.windowMillis(), rule.windowMillis());
+        evictExpired();
+    }
+
+    private void evictExpired() {
+        if (leases.size() <= properties.getMaxKeys()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        leases.values().removeIf(lease -> lease.expireAt <= now && lease.refilling.get() == null);
+    }
+
+    static final class PermitLease {
+
+        private final AtomicLong permits = new AtomicLong();
+        /**
+         * 正在进行的续租，没有续租时为null；同一时间只有一次续租，其他线程等待它结束
+         */
+        private final AtomicReference<CompletableFuture<Void>> refilling = new AtomicReference<>();
+        /**
+         * 租约所属窗口的本地过期时间
+         */
+        private volatile long expireAt;
+        /**
+         * Redis中窗口的令牌已被全部预扣
+         */
+        private volatile boolean exhausted;
+
+        long permits() {
+            return permits.get();
+        }
+
+        boolean isExhausted() {
+            return exhausted && System.currentTimeMillis() < expireAt;
+        }
+
+        boolean tryTake() {
+            if (System.currentTimeMillis() >= expireAt) {
+                return false;
+            }
+            long current;
+            do {
+                current = permits.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!permits.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        /**
+         * @param granted      预扣到的令牌数
+         * @param ttl          Redis中窗口的剩余毫秒
+         * @param windowMillis 窗口长度
+         */
+        void grant(long granted, long ttl, long windowMillis) {
+            long now = System.currentTimeMillis();
+            // Redis中的窗口可能先于本地到期，续租拿到的是下一个窗口的令牌：窗口结束时间比本地记录的晚了大半个窗口
+            if (now >= expireAt || now + ttl - expireAt > windowMillis / 2) {
+                // 新窗口，丢弃上一个窗口剩余的令牌
+                permits.set(granted);
+            } else {
+                permits.addAndGet(granted);
+            }
+            exhausted = granted == 0;
+            expireAt = now + ttl;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+
+/**
+ * 一次限流判断所需的全部参数
+ *
+ * @param key             限流的key
+ * @param algorithm       限流算法
+ * @param limit           窗口内允许的请求个数
+ * @param windowMillis    窗口大小，毫秒
+ * @param capacity        令牌桶容量，仅令牌桶算法使用
+ * @param refillPerSecond 令牌桶每秒补充的令牌数，仅令牌桶算法使用
+ * @param lease           是否从本地租约中获取令牌，仅固定窗口算法使用
+ * @author fangxi
+ */
+public record RateLimitRule(
+        String key,
+        RateLimitAlgorithmEnum algorithm,
+        int limit,
+        long windowMillis,
+        long capacity,
+        double refillPerSecond,
+        boolean lease
+) {
+
+    /**
+     * 窗口类算法的限流规则
+     *
+     * @param key          限流的key
+     * @param algorithm    限流算法
+     * @param limit        窗口内允许的请求个数
+     * @param windowMillis 窗口大小，毫秒
+     * @return RateLimitRule
+     */
+    public static RateLimitRule of(String key, RateLimitAlgorithmEnum algorithm, int limit, long windowMillis) {
+        return new RateLimitRule(key, algorithm, limit, windowMillis, limit, limit * 1000D / windowMillis, false);
+    }
+
+    /**
+     * 令牌桶算法的限流规则
+     *
+     * @param key             限流的key
+     * @param capacity        令牌桶容量，即允许的最大突发请求数
+     * @param refillPerSecond 每秒补充的令牌数，即稳定的吞吐量
+     * @return RateLimitRule
+     */
+    public static RateLimitRule tokenBucket(String key, long capacity, double refillPerSecond) {
+        return new RateLimitRule(key, RateLimitAlgorithmEnum.TOKEN_BUCKET, (int) capacity, (long) Math.ceil(capacity * 1000D / refillPerSecond), capacity, refillPerSecond, false);
+    }
+
+    /**
+     * 开启本地令牌租约
+     *
+     * @param lease 是否从本地租约中获取令牌
+     * @return RateLimitRule
+     */
+    public RateLimitRule withLease(boolean lease) {
+        return new RateLimitRule(key, algorithm, limit, windowMillis, capacity, refillPerSecond, lease);
+    }
+
+    /**
+     * 替换限流的key，其余参数不变
+     *
+     * @param key 限流的key
+     * @return RateLimitRule
+     */
+    public RateLimitRule withKey(String key) {
+        return new RateLimitRule(key, algorithm, limit, windowMillis, capacity, refillPerSecond, lease);
+    }
+
+    public RateLimitRule {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis必须大于0");
+        }
+        if (algorithm == RateLimitAlgorithmEnum.TOKEN_BUCKET && (capacity <= 0 || refillPerSecond <= 0)) {
+            throw new IllegalArgumentException("令牌桶的capacity和refillPerSecond必须大于0");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 限流的存储后端
+ * <p>
+ * {@link AccessLimiterAspect} 只依赖此接口，默认提供基于Redis的分布式实现 {@link AccessLimiterHandler}
+ * 和纯本地内存实现 {@link LocalRateLimiterBackend}，也可以注册自定义实现的Bean替换默认实现。
+ * </p>
+ *
+ * @author fangxi
+ */
+public interface RateLimiterBackend {
+
+    /**
+     * 尝试获取一次访问许可
+     *
+     * @param rule 限流规则
+     * @return true表示放行，false表示被限流
+     */
+    boolean tryAcquire(RateLimitRule rule);
+
+    /**
+     * 同时对多个规则获取访问许可，任意一个被限流都视为被限流
+     * <p>默认实现逐个判断，不保证原子性：后面的规则被限流时，前面的规则已经计数。
+     * 内置实现都只在全部放行时计数：{@link AccessLimiterHandler} 在一次Lua调用中判断，{@link LocalRateLimiterBackend} 归还已经获取的许可</p>
+     *
+     * @param rules 限流规则
+     * @return 第一个被限流的规则，全部放行时返回null
+     */
+    default RateLimitRule tryAcquireAll(List<RateLimitRule> rules) {
+        for (RateLimitRule rule : rules) {
+            if (!tryAcquire(rule)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 异步获取访问许可，供返回 {@code Mono}、{@code CompletableFuture} 的方法使用
+     * <p>默认实现直接在调用线程中同步执行，只适合本地内存等不阻塞的实现；访问网络的实现需要覆盖此方法</p>
+     *
+     * @param rule 限流规则
+     * @return true表示放行，false表示被限流
+     */
+    default CompletionStage<Boolean> tryAcquireAsync(RateLimitRule rule) {
+        return CompletableFuture.completedFuture(tryAcquire(rule));
+    }
+
+    /**
+     * {@link #tryAcquireAll(List)} 的异步版本
+     *
+     * @param rules 限流规则
+     * @return 第一个被限流的规则，全部放行时为null
+     */
+    default CompletionStage<RateLimitRule> tryAcquireAllAsync(List<RateLimitRule> rules) {
+        return CompletableFuture.completedFuture(tryAcquireAll(rules));
+    }
+
+}
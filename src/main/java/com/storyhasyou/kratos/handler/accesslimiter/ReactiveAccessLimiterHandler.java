@@ -0,0 +1,75 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import com.storyhasyou.kratos.utils.IdUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 基于 {@link ReactiveStringRedisTemplate} 的非阻塞限流，与 {@link AccessLimiterHandler} 使用相同的lua脚本
+ *
+ * @author fangxi
+ */
+@RequiredArgsConstructor
+public class ReactiveAccessLimiterHandler {
+
+    private static final RedisScript<Long> FIXED_WINDOW_LUA = RedisScript.of(LuaScriptConstant.RATE_LIMITER, Long.class);
+    private static final RedisScript<Long> SLIDING_LOG_LUA = RedisScript.of(LuaScriptConstant.SLIDING_LOG_RATE_LIMITER, Long.class);
+    private static final RedisScript<Long> SLIDING_WINDOW_LUA = RedisScript.of(LuaScriptConstant.SLIDING_WINDOW_RATE_LIMITER, Long.class);
+    private static final RedisScript<Long> TOKEN_BUCKET_LUA = RedisScript.of(LuaScriptConstant.TOKEN_BUCKET_RATE_LIMITER, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MULTI_RATE_LIMIT_LUA = RedisScript.of(LuaScriptConstant.MULTI_RATE_LIMITER, List.class);
+
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+    /**
+     * 连接工厂支持响应式（Lettuce）时创建，否则返回null。调用前需要确认classpath中有reactor
+     *
+     * @param redisTemplate 同步的RedisTemplate
+     * @return ReactiveAccessLimiterHandler
+     */
+    public static ReactiveAccessLimiterHandler createIfSupported(RedisTemplate<String, Object> redisTemplate) {
+        RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+        if (connectionFactory instanceof ReactiveRedisConnectionFactory reactiveConnectionFactory) {
+            return new ReactiveAccessLimiterHandler(new ReactiveStringRedisTemplate(reactiveConnectionFactory));
+        }
+        return null;
+    }
+
+    /**
+     * @param rule 限流规则
+     * @return 0表示放行，大于0表示被限流，值为剩余限流毫秒
+     */
+    public Mono<Long> tryAcquire(RateLimitRule rule) {
+        List<String> keys = List.of(rule.key());
+        String limit = String.valueOf(rule.limit());
+        String timeout = String.valueOf(rule.windowMillis());
+        Flux<Long> retryAfter = switch (rule.algorithm()) {
+            case FIXED_WINDOW -> reactiveRedisTemplate.execute(FIXED_WINDOW_LUA, keys, List.of(limit, timeout));
+            case SLIDING_LOG -> reactiveRedisTemplate.execute(SLIDING_LOG_LUA, keys, List.of(limit, timeout, IdUtils.getIdStr()));
+            case SLIDING_WINDOW -> reactiveRedisTemplate.execute(SLIDING_WINDOW_LUA, keys, List.of(limit, timeout));
+            case TOKEN_BUCKET -> reactiveRedisTemplate.execute(TOKEN_BUCKET_LUA, keys, List.of(String.valueOf(rule.capacity()), String.valueOf(rule.refillPerSecond())));
+        };
+        return retryAfter.next().defaultIfEmpty(0L);
+    }
+
+    /**
+     * @param rules 限流规则
+     * @return {第一个被限流的规则的下标（从1开始）, 剩余限流毫秒}，全部放行时下标为0
+     */
+    public Mono<List<?>> tryAcquireAll(List<RateLimitRule> rules) {
+        List<String> keys = rules.stream().map(RateLimitRule::key).toList();
+        // Lettuce的响应式客户端把数组结果拆成逐个元素发出，这里重新收集成数组
+        return reactiveRedisTemplate.execute(MULTI_RATE_LIMIT_LUA, keys, AccessLimiterHandler.multiRateLimitArgs(rules))
+                .collectList()
+                .map(result -> result.size() == 1 && result.get(0) instanceof List<?> list ? list : result);
+    }
+}
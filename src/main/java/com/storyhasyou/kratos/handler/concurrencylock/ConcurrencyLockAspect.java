@@ -2,71 +2,219 @@ package com.storyhasyou.kratos.handler.concurrencylock;
 
 import com.storyhasyou.kratos.annotation.ConcurrencyLock;
 import com.storyhasyou.kratos.exceptions.BusinessException;
-import com.storyhasyou.kratos.utils.SpelUtils;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
 
+import java.lang.reflect.Method;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
+ * 并发锁切面
+ * <p>
+ * 所有单例创建完成后扫描Bean中的 {@link ConcurrencyLock} 方法，callbackClass没有对应的回调Bean时启动失败，
+ * 不会等到线上第一次抢锁失败才发现
+ * </p>
+ *
  * @author fangxi created by 2023/10/18
  */
 @Aspect
 @Slf4j
-@RequiredArgsConstructor
-public class ConcurrencyLockAspect {
+public class ConcurrencyLockAspect implements BeanFactoryAware, SmartInitializingSingleton {
 
-    private static final int DEFAULT_VALUE = 1;
+    private final ConcurrencyLockHandler concurrencyLockHandler;
+    /**
+     * 回调的实现类到实例的映射，启动时构建
+     */
+    private final Map<Class<?>, ConcurrencyLockCallback> concurrencyLockCallbacks;
+    private final List<ConcurrencyLockMetrics> concurrencyLockMetrics;
+    private final HeldLockRegistry heldLockRegistry;
+    /**
+     * 执行异步回调的线程池
+     */
+    private final Executor callbackExecutor;
+    /**
+     * 方法的元数据缓存，过期时间、SPEL表达式、回调实例只在第一次调用时解析
+     */
+    private final Map<Method, ConcurrencyLockMetadata> metadataCache = new ConcurrentHashMap<>();
+    private ListableBeanFactory beanFactory;
 
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final List<ConcurrencyLockCallback> concurrencyLockCallbackList;
+    public ConcurrencyLockAspect(ConcurrencyLockHandler concurrencyLockHandler, List<ConcurrencyLockCallback> concurrencyLockCallbackList,
+                                 List<ConcurrencyLockMetrics> concurrencyLockMetrics, HeldLockRegistry heldLockRegistry, Executor callbackExecutor) {
+        this.concurrencyLockHandler = concurrencyLockHandler;
+        this.concurrencyLockCallbacks = indexCallbacks(concurrencyLockCallbackList);
+        this.concurrencyLockMetrics = concurrencyLockMetrics;
+        this.heldLockRegistry = heldLockRegistry;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        if (beanFactory instanceof ListableBeanFactory listableBeanFactory) {
+            this.beanFactory = listableBeanFactory;
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (beanFactory == null) {
+            return;
+        }
+        for (String beanName : beanFactory.getBeanNamesForType(Object.class, false, false)) {
+            // 不触发FactoryBean的初始化，拿不到类型的Bean跳过
+            Class<?> beanType = beanFactory.getType(beanName, false);
+            if (beanType != null) {
+                validateCallbacks(beanType);
+            }
+        }
+    }
+
+    /**
+     * 校验类中所有并发锁方法的callbackClass都有对应的回调Bean
+     *
+     * @param beanType Bean的类型，可以是CGLIB代理类
+     * @throws IllegalStateException callbackClass没有对应的Bean
+     */
+    void validateCallbacks(Class<?> beanType) {
+        MethodIntrospector.selectMethods(ClassUtils.getUserClass(beanType),
+                        (MethodIntrospector.MetadataLookup<ConcurrencyLock>) method -> AnnotationUtils.findAnnotation(method, ConcurrencyLock.class))
+                .forEach((method, concurrencyLock) -> ConcurrencyLockMetadata.callback(method, concurrencyLock, concurrencyLockCallbacks));
+    }
 
     @Around("@annotation(concurrencyLock)")
     public Object around(ProceedingJoinPoint joinPoint, ConcurrencyLock concurrencyLock) throws Throwable {
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        log.info("begin to aop " + signature.getMethod().getName());
-        String key = SpelUtils.parse(joinPoint, concurrencyLock.key());
-        if (key == null) {
+        ConcurrencyLockMetadata metadata = getMetadata(joinPoint, concurrencyLock);
+        if (concurrencyLock.batch()) {
+            return aroundBatch(joinPoint, metadata);
+        }
+        String uniqueKey = metadata.resolveKey(joinPoint.getArgs());
+        if (uniqueKey == null) {
             log.warn("concurrencyLock uniqueKey is null {}", concurrencyLock);
+            uniqueKey = metadata.fallbackKey();
         }
-        String uniqueKey = null != key ? concurrencyLock.prefix() + key : concurrencyLock.prefix() + concurrencyLock.key();
-        int expire = concurrencyLock.expireInSeconds() > 0 ? concurrencyLock.expireInSeconds() : 10;
-        Boolean success = redisTemplate.opsForValue().setIfAbsent(uniqueKey, DEFAULT_VALUE, expire, TimeUnit.SECONDS);
-        if (Boolean.TRUE.equals(success)) {
+        long start = System.nanoTime();
+        boolean acquired = concurrencyLockHandler.tryLock(uniqueKey, metadata.lockOptions());
+        long acquiredAt = System.nanoTime();
+        recordAcquire(concurrencyLock, acquired, acquiredAt - start);
+        if (acquired) {
+            long handle = heldLockRegistry.register(uniqueKey, concurrencyLock.type());
             try {
                 return joinPoint.proceed();
             } finally {
-                redisTemplate.delete(uniqueKey);
+                try {
+                    // 只释放自己持有的锁，锁过期后被其他请求抢到时不会误删
+                    concurrencyLockHandler.unlock(uniqueKey, metadata.lockOptions());
+                } finally {
+                    // 解锁失败（Redis超时等）时锁会自然过期，本地登记不能一直留着
+                    heldLockRegistry.release(handle);
+                    recordHold(concurrencyLock, System.nanoTime() - acquiredAt);
+                }
             }
         } else {
             // 没有抢到并发锁
             log.warn("duplicate request with unique key {}, abort", uniqueKey);
             // 处理回调方法
-            handleCallback(joinPoint, concurrencyLock);
+            handleCallback(joinPoint, metadata);
             // 处理异常
             handleException(concurrencyLock);
         }
         return null;
     }
 
+    private Object aroundBatch(ProceedingJoinPoint joinPoint, ConcurrencyLockMetadata metadata) throws Throwable {
+        List<String> uniqueKeys = metadata.resolveKeys(joinPoint.getArgs());
+        if (uniqueKeys == null) {
+            log.warn("concurrencyLock uniqueKeys is null {}", metadata.concurrencyLock());
+            uniqueKeys = List.of(metadata.fallbackKey());
+        }
+        long start = System.nanoTime();
+        boolean acquired = concurrencyLockHandler.tryLockAll(uniqueKeys, metadata.lockOptions());
+        long acquiredAt = System.nanoTime();
+        recordAcquire(metadata.concurrencyLock(), acquired, acquiredAt - start);
+        if (acquired) {
+            long handle = heldLockRegistry.register(String.join(",", uniqueKeys), metadata.concurrencyLock().type());
+            try {
+                return joinPoint.proceed();
+            } finally {
+                try {
+                    concurrencyLockHandler.unlockAll(uniqueKeys, metadata.lockOptions());
+                } finally {
+                    heldLockRegistry.release(handle);
+                    recordHold(metadata.concurrencyLock(), System.nanoTime() - acquiredAt);
+                }
+            }
+        }
+        log.warn("duplicate request with unique keys {}, abort", uniqueKeys);
+        handleCallback(joinPoint, metadata);
+        handleException(metadata.concurrencyLock());
+        return null;
+    }
+
+    private void recordAcquire(ConcurrencyLock concurrencyLock, boolean acquired, long elapsedNanos) {
+        for (ConcurrencyLockMetrics metrics : concurrencyLockMetrics) {
+            metrics.recordAcquire(concurrencyLock.prefix(), acquired, elapsedNanos);
+        }
+    }
+
+    private void recordHold(ConcurrencyLock concurrencyLock, long elapsedNanos) {
+        for (ConcurrencyLockMetrics metrics : concurrencyLockMetrics) {
+            metrics.recordHold(concurrencyLock.prefix(), elapsedNanos);
+        }
+    }
 
-    private void handleCallback(JoinPoint joinPoint, ConcurrencyLock concurrencyLock) {
-        Class<? extends ConcurrencyLockCallback> callbackClass = concurrencyLock.callbackClass();
-        if (callbackClass == null) {
+    private ConcurrencyLockMetadata getMetadata(JoinPoint joinPoint, ConcurrencyLock concurrencyLock) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        ConcurrencyLockMetadata metadata = metadataCache.get(method);
+        if (metadata == null) {
+            metadata = metadataCache.computeIfAbsent(method, m -> ConcurrencyLockMetadata.of(m, concurrencyLock, concurrencyLockCallbacks));
+        }
+        return metadata;
+    }
+
+    private void handleCallback(JoinPoint joinPoint, ConcurrencyLockMetadata metadata) {
+        ConcurrencyLockCallback callback = metadata.callback();
+        ConcurrencyLock concurrencyLock = metadata.concurrencyLock();
+        if (!concurrencyLock.asyncCallback()) {
+            callback.execute(joinPoint, concurrencyLock);
             return;
         }
-        concurrencyLockCallbackList.stream()
-                .filter(callback -> callback.getClass().equals(callbackClass))
-                .findFirst()
-                .ifPresent(callback -> callback.execute(joinPoint, concurrencyLock));
+        // 异步回调不延长请求的耗时，异常只能记录日志
+        callbackExecutor.execute(() -> {
+            try {
+                callback.execute(joinPoint, concurrencyLock);
+            } catch (Exception e) {
+                log.error("concurrency lock callback {} failed", callback.getClass().getName(), e);
+            }
+        });
+    }
 
+    /**
+     * 按实现类建立索引，代理的回调按被代理的类登记
+     */
+    private static Map<Class<?>, ConcurrencyLockCallback> indexCallbacks(List<ConcurrencyLockCallback> concurrencyLockCallbackList) {
+        Map<Class<?>, ConcurrencyLockCallback> callbacks = new HashMap<>();
+        for (ConcurrencyLockCallback callback : concurrencyLockCallbackList) {
+            ConcurrencyLockCallback previous = callbacks.putIfAbsent(AopUtils.getTargetClass(callback), callback);
+            if (previous != null) {
+                throw new IllegalStateException("duplicate ConcurrencyLockCallback bean of type " + AopUtils.getTargetClass(callback).getName());
+            }
+        }
+        return Map.copyOf(callbacks);
     }
 
     private void handleException(ConcurrencyLock concurrencyLock) {
@@ -1,13 +1,24 @@
 package com.storyhasyou.kratos.handler.concurrencylock;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * @author fangxi created by 2023/10/25
@@ -15,13 +26,79 @@ import java.util.List;
 @RequiredArgsConstructor
 @SpringBootConfiguration
 @ConditionalOnClass(RedisOperations.class)
+@EnableConfigurationProperties(ConcurrencyLockProperties.class)
 public class ConcurrencyLockConfig {
 
     private final List<ConcurrencyLockCallback> concurrencyLockCallbackList;
 
     @Bean
-    public ConcurrencyLockAspect concurrencyLockAspect(RedisTemplate<String, Object> redisTemplate) {
-        return new ConcurrencyLockAspect(redisTemplate, concurrencyLockCallbackList);
+    @ConditionalOnProperty(prefix = "blades-of-chaos.concurrency-lock.watchdog", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ConcurrencyLockWatchdog concurrencyLockWatchdog(RedisTemplate<String, Object> redisTemplate, ConcurrencyLockProperties concurrencyLockProperties) {
+        return new ConcurrencyLockWatchdog(redisTemplate, concurrencyLockProperties.getWatchdog().getInterval());
+    }
+
+    @Bean
+    public ConcurrencyLockNotifier concurrencyLockNotifier() {
+        return new ConcurrencyLockNotifier();
+    }
+
+    /**
+     * 订阅解锁通知，所有等待的锁共用一个订阅
+     */
+    @Bean
+    public RedisMessageListenerContainer concurrencyLockListenerContainer(RedisConnectionFactory redisConnectionFactory, ConcurrencyLockNotifier concurrencyLockNotifier) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(concurrencyLockNotifier, new ChannelTopic(ConcurrencyLockHandler.UNLOCK_CHANNEL));
+        return container;
+    }
+
+    @Bean
+    public ConcurrencyLockHandler concurrencyLockHandler(RedisTemplate<String, Object> redisTemplate, ObjectProvider<ConcurrencyLockWatchdog> concurrencyLockWatchdog,
+                                                         ConcurrencyLockNotifier concurrencyLockNotifier, ConcurrencyLockProperties concurrencyLockProperties) {
+        LocalLockTable localLockTable = concurrencyLockProperties.isLocalLock() ? new LocalLockTable() : null;
+        return new ConcurrencyLockHandler(redisTemplate, concurrencyLockWatchdog.getIfAvailable(), concurrencyLockNotifier, localLockTable);
+    }
+
+    @Bean
+    public HeldLockRegistry heldLockRegistry() {
+        return new HeldLockRegistry();
+    }
+
+    @Bean
+    public ConcurrencyLockAspect concurrencyLockAspect(ConcurrencyLockHandler concurrencyLockHandler, ObjectProvider<ConcurrencyLockMetrics> concurrencyLockMetrics,
+                                                       HeldLockRegistry heldLockRegistry,
+                                                       @Qualifier("namedVirtualThreadExecutor") ObjectProvider<Executor> namedVirtualThreadExecutor) {
+        // 异步回调使用虚拟线程执行
+        Executor callbackExecutor = namedVirtualThreadExecutor.getIfAvailable(Executors::newVirtualThreadPerTaskExecutor);
+        return new ConcurrencyLockAspect(concurrencyLockHandler, concurrencyLockCallbackList, concurrencyLockMetrics.orderedStream().toList(),
+                heldLockRegistry, callbackExecutor);
+    }
+
+    /**
+     * classpath中有Micrometer时，记录每个锁前缀的加锁耗时、竞争次数和持有时间
+     */
+    @SpringBootConfiguration
+    @ConditionalOnClass(MeterRegistry.class)
+    public static class MicrometerConcurrencyLockConfig {
+
+        @Bean
+        public MicrometerConcurrencyLockMetrics micrometerConcurrencyLockMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            return new MicrometerConcurrencyLockMetrics(meterRegistry);
+        }
+    }
+
+    /**
+     * classpath中有actuator时，暴露本JVM正在持有的锁
+     */
+    @SpringBootConfiguration
+    @ConditionalOnClass(Endpoint.class)
+    public static class ConcurrencyLockEndpointConfig {
+
+        @Bean
+        public ConcurrencyLockEndpoint concurrencyLockEndpoint(HeldLockRegistry heldLockRegistry) {
+            return new ConcurrencyLockEndpoint(heldLockRegistry);
+        }
     }
 
 }
@@ -0,0 +1,46 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.OptionalLong;
+
+/**
+ * 当前线程持有的锁的上下文
+ * <p>
+ * 开启fencing的锁获取成功后，fencing token在持有期间可以通过 {@link #currentFencingToken()} 读取。
+ * token由Redis对每个锁key单调递增生成，写下游时带上token，下游拒绝比已见过的token更小的写入，
+ * 即使GC停顿导致锁过期后出现两个持有者，旧持有者的写入也会被拒绝。
+ * </p>
+ *
+ * @author fangxi
+ */
+public final class ConcurrencyLockContext {
+
+    /**
+     * 嵌套加锁时按栈保存，最内层的锁在栈顶
+     */
+    private static final ThreadLocal<Deque<Long>> FENCING_TOKENS = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private ConcurrencyLockContext() {
+    }
+
+    /**
+     * @return 当前线程最内层的开启了fencing的锁的token，没有持有时为空
+     */
+    public static OptionalLong currentFencingToken() {
+        Long token = FENCING_TOKENS.get().peek();
+        return token == null ? OptionalLong.empty() : OptionalLong.of(token);
+    }
+
+    static void push(long fencingToken) {
+        FENCING_TOKENS.get().push(fencingToken);
+    }
+
+    static void pop() {
+        Deque<Long> tokens = FENCING_TOKENS.get();
+        tokens.poll();
+        if (tokens.isEmpty()) {
+            FENCING_TOKENS.remove();
+        }
+    }
+}
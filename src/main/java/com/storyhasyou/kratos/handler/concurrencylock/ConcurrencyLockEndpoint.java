@@ -0,0 +1,45 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * 并发锁的actuator端点，GET /actuator/concurrencylock 查看本JVM正在持有的锁和持有时间
+ *
+ * @author fangxi
+ */
+@Endpoint(id = "concurrencylock")
+@RequiredArgsConstructor
+public class ConcurrencyLockEndpoint {
+
+    private final HeldLockRegistry heldLockRegistry;
+
+    @ReadOperation
+    public HeldLockReport heldLocks() {
+        List<HeldLockView> views = heldLockRegistry.heldLocks().stream()
+                .map(heldLock -> new HeldLockView(heldLock.key(), heldLock.type().name(), heldLock.thread(),
+                        heldLock.acquiredAt().toString(), heldLock.ageMillis()))
+                .toList();
+        return new HeldLockReport(views.size(), views);
+    }
+
+    /**
+     * @param total     正在持有的锁的个数
+     * @param heldLocks 正在持有的锁，持有时间最长的在前
+     */
+    public record HeldLockReport(int total, List<HeldLockView> heldLocks) {
+    }
+
+    /**
+     * @param key        锁key
+     * @param type       锁的类型
+     * @param thread     持有锁的线程名
+     * @param acquiredAt 获取锁的时间
+     * @param ageMillis  已经持有的毫秒数
+     */
+    public record HeldLockView(String key, String type, String thread, String acquiredAt, long ageMillis) {
+    }
+}
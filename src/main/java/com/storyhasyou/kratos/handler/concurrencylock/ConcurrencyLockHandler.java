@@ -0,0 +1,370 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.enums.LockTypeEnum;
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import com.storyhasyou.kratos.utils.IdUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于Redis的分布式锁，支持互斥锁、读写锁和信号量
+ * <p>
+ * 互斥锁和读写锁是一个HASH，field为持有者标识（实例ID:线程ID），value为重入次数；信号量是一个ZSET，每个许可单独过期。
+ * 读写锁的每个读者在 {@link #READERS_SUFFIX} ZSET中单独过期；写者等待时阻止新的读者进入，持续的读请求不会让写者一直等下去。
+ * 只有持有者自己可以解锁，锁过期后被其他节点抢到时，原持有者的解锁不会误删别人的锁。
+ * 同一个key只能使用一种类型的锁。
+ * </p>
+ * <p>
+ * 等待锁时线程通过 {@link LockSupport} 挂起，由解锁的pub/sub通知唤醒，最长挂起到锁的剩余过期时间；
+ * 在虚拟线程中等待不占用平台线程。等待中的线程被中断时放弃等待，保留中断标记并返回加锁失败。
+ * </p>
+ *
+ * @author fangxi
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ConcurrencyLockHandler {
+
+    /**
+     * 解锁通知的频道，消息内容为锁key
+     */
+    public static final String UNLOCK_CHANNEL = "concurrency-lock:unlock";
+    /**
+     * fencing token计数器的key后缀，计数器不会过期，保证同一个锁key的token永远递增。
+     * Redis Cluster下需要在锁key中使用hash tag，例如 order:{1001}，使计数器与锁在同一个slot
+     */
+    public static final String FENCING_SUFFIX = ":fencing";
+    /**
+     * 读写锁中读者过期时间ZSET的key后缀，每个读者单独过期。Redis Cluster下同样需要在锁key中使用hash tag
+     */
+    public static final String READERS_SUFFIX = ":readers";
+    /**
+     * 当前JVM实例的唯一标识，与线程ID一起组成持有者标识
+     */
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TRY_LOCK_LUA = RedisScript.of(LuaScriptConstant.TRY_LOCK, List.class);
+    private static final RedisScript<Long> UN_LOCK_LUA = RedisScript.of(LuaScriptConstant.UN_LOCK, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_LOCK_LUA = RedisScript.of(LuaScriptConstant.READ_LOCK, List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> WRITE_LOCK_LUA = RedisScript.of(LuaScriptConstant.WRITE_LOCK, List.class);
+    private static final RedisScript<Long> READ_WRITE_UN_LOCK_LUA = RedisScript.of(LuaScriptConstant.READ_WRITE_UN_LOCK, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SEMAPHORE_ACQUIRE_LUA = RedisScript.of(LuaScriptConstant.SEMAPHORE_ACQUIRE, List.class);
+    private static final RedisScript<Long> SEMAPHORE_RELEASE_LUA = RedisScript.of(LuaScriptConstant.SEMAPHORE_RELEASE, Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MULTI_TRY_LOCK_LUA = RedisScript.of(LuaScriptConstant.MULTI_TRY_LOCK, List.class);
+    private static final RedisScript<Long> MULTI_UN_LOCK_LUA = RedisScript.of(LuaScriptConstant.MULTI_UN_LOCK, Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    /**
+     * 锁的看门狗，关闭时为null
+     */
+    private final ConcurrencyLockWatchdog watchdog;
+    /**
+     * 解锁通知，为null时不支持等待锁
+     */
+    private final ConcurrencyLockNotifier notifier;
+    /**
+     * 本地锁表，同一个JVM中只有一个线程去Redis抢同一把锁，关闭时为null
+     */
+    private final LocalLockTable localLockTable;
+
+    /**
+     * 当前线程尝试获取互斥锁，已持有时重入次数加一
+     *
+     * @param key          锁key
+     * @param expireMillis 锁的过期时间，毫秒
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String key, long expireMillis) {
+        return tryLock(key, LockOptions.exclusive(expireMillis));
+    }
+
+    /**
+     * 当前线程尝试获取锁，锁被占用时最多等待 {@link LockOptions#waitMillis()}。
+     * 开启fencing时，持有期间可以通过 {@link ConcurrencyLockContext#currentFencingToken()} 读取token
+     *
+     * @param key     锁key
+     * @param options 加锁参数
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String key, LockOptions options) {
+        long start = System.nanoTime();
+        boolean local = localLockTable != null && options.localExclusive();
+        if (local && !localLockTable.tryLock(key, options.waitMillis())) {
+            // 本JVM中已经有线程持有或正在抢这把锁
+            return false;
+        }
+        boolean locked = false;
+        try {
+            String owner = currentOwner();
+            Acquisition acquisition = acquire(key, owner, options, options.waitMillis());
+            long remainingWaitMillis = options.waitMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (!acquisition.locked() && remainingWaitMillis > 0 && notifier != null) {
+                acquisition = await(key, owner, options, remainingWaitMillis);
+            }
+            locked = acquisition.locked();
+            if (locked && options.renew() && watchdog != null) {
+                watchdog.watch(key, owner, options);
+            }
+            if (locked && options.fencing()) {
+                ConcurrencyLockContext.push(acquisition.fencingToken());
+            }
+            return locked;
+        } finally {
+            if (!locked && local) {
+                localLockTable.unlock(key);
+            }
+        }
+    }
+
+    /**
+     * 当前线程释放互斥锁，重入次数减到0时删除锁并发布解锁通知
+     *
+     * @param key          锁key
+     * @param expireMillis 仍然持有时重置的过期时间，毫秒
+     * @return 当前线程是否持有这把锁，返回false说明锁已经过期
+     */
+    public boolean unlock(String key, long expireMillis) {
+        return unlock(key, LockOptions.exclusive(expireMillis));
+    }
+
+    /**
+     * 当前线程释放锁，需要与加锁时使用相同类型的参数
+     *
+     * @param key     锁key
+     * @param options 加锁参数
+     * @return 当前线程是否持有这把锁，返回false说明锁已经过期
+     */
+    public boolean unlock(String key, LockOptions options) {
+        String owner = currentOwner();
+        if (options.fencing()) {
+            ConcurrencyLockContext.pop();
+        }
+        if (options.renew() && watchdog != null) {
+            // 先停止续期再解锁；只撤销加锁时登记的那一次，外层续期的重入锁被内层不续期的加锁重入时，内层解锁不影响外层续期
+            watchdog.unwatch(key, owner);
+        }
+        RedisScript<Long> script = switch (options.type()) {
+            case EXCLUSIVE -> UN_LOCK_LUA;
+            case READ, WRITE -> READ_WRITE_UN_LOCK_LUA;
+            case SEMAPHORE -> SEMAPHORE_RELEASE_LUA;
+        };
+        List<String> keys = script == READ_WRITE_UN_LOCK_LUA ? List.of(key, key + READERS_SUFFIX) : List.of(key);
+        Long result;
+        try {
+            result = redisTemplate.execute(script, StringRedisSerializer.UTF_8, null, keys, owner, String.valueOf(options.expireMillis()), UNLOCK_CHANNEL);
+        } finally {
+            // Redis中释放之后再释放本地锁，本地排队的下一个线程去Redis时锁已经空闲
+            if (localLockTable != null && options.localExclusive()) {
+                localLockTable.unlock(key);
+            }
+        }
+        if (result == null || result < 0) {
+            log.warn("concurrency lock {} is not held by current thread, it may have expired", key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 当前线程一次获取多把互斥锁，要么全部获取成功，要么一把都不持有
+     * <p>
+     * key去重后按字典序排序，在一个Lua脚本中原子地检查并加锁，不会出现持有一部分锁时等待另一部分的死锁；
+     * 本地锁也按同样的顺序获取。Redis Cluster下所有key需要使用相同的hash tag，例如 stock:{order-1}:sku-1。
+     * 批量加锁只支持互斥锁，不生成fencing token
+     * </p>
+     *
+     * @param keys    锁key
+     * @param options 加锁参数，类型必须为 {@link LockTypeEnum#EXCLUSIVE}
+     * @return 是否全部获取成功
+     */
+    public boolean tryLockAll(Collection<String> keys, LockOptions options) {
+        if (options.type() != LockTypeEnum.EXCLUSIVE) {
+            throw new IllegalArgumentException("batch lock only supports exclusive lock");
+        }
+        List<String> sortedKeys = sortKeys(keys);
+        if (sortedKeys.isEmpty()) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.waitMillis());
+        List<String> localLocked = new ArrayList<>(sortedKeys.size());
+        boolean locked = false;
+        try {
+            if (localLockTable != null) {
+                for (String key : sortedKeys) {
+                    if (!localLockTable.tryLock(key, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))) {
+                        return false;
+                    }
+                    localLocked.add(key);
+                }
+            }
+            String owner = currentOwner();
+            MultiAcquisition acquisition = acquireAll(sortedKeys, owner, options);
+            while (!acquisition.locked() && notifier != null && deadline - System.nanoTime() > 0) {
+                // 只等待这次被占用的key，它释放后整体重试
+                String blockedKey = sortedKeys.get(acquisition.blockedIndex());
+                notifier.subscribe(blockedKey);
+                try {
+                    acquisition = acquireAll(sortedKeys, owner, options);
+                    long remaining = deadline - System.nanoTime();
+                    if (!acquisition.locked() && remaining > 0) {
+                        LockSupport.parkNanos(this, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(acquisition.ttl())));
+                    }
+                } finally {
+                    notifier.unsubscribe(blockedKey, !acquisition.locked());
+                }
+                if (!acquisition.locked() && Thread.currentThread().isInterrupted()) {
+                    // 被中断后parkNanos会立即返回，继续等待会变成对Redis的空转；不清除中断标记，交给调用方处理
+                    break;
+                }
+                if (!acquisition.locked()) {
+                    acquisition = acquireAll(sortedKeys, owner, options);
+                }
+            }
+            locked = acquisition.locked();
+            if (locked && options.renew() && watchdog != null) {
+                sortedKeys.forEach(key -> watchdog.watch(key, owner, options));
+            }
+            return locked;
+        } finally {
+            if (!locked) {
+                localLocked.forEach(localLockTable::unlock);
+            }
+        }
+    }
+
+    /**
+     * 当前线程在一个Lua脚本中释放 {@link #tryLockAll(Collection, LockOptions)} 获取的全部锁
+     *
+     * @param keys    锁key，与加锁时相同
+     * @param options 加锁参数
+     * @return 当前线程是否仍然持有全部的锁，返回false说明部分锁已经过期
+     */
+    public boolean unlockAll(Collection<String> keys, LockOptions options) {
+        List<String> sortedKeys = sortKeys(keys);
+        if (sortedKeys.isEmpty()) {
+            return true;
+        }
+        String owner = currentOwner();
+        if (options.renew() && watchdog != null) {
+            sortedKeys.forEach(key -> watchdog.unwatch(key, owner));
+        }
+        Long lost;
+        try {
+            lost = redisTemplate.execute(MULTI_UN_LOCK_LUA, StringRedisSerializer.UTF_8, null, sortedKeys, owner, String.valueOf(options.expireMillis()), UNLOCK_CHANNEL);
+        } finally {
+            if (localLockTable != null) {
+                sortedKeys.forEach(localLockTable::unlock);
+            }
+        }
+        if (lost == null || lost > 0) {
+            log.warn("{} of concurrency locks {} are not held by current thread, they may have expired", lost, sortedKeys);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 当前线程的持有者标识
+     */
+    public static String currentOwner() {
+        return INSTANCE_ID + ":" + Thread.currentThread().threadId();
+    }
+
+    /**
+     * @param waitMillis 剩余的等待毫秒，写锁等待期间用它标记写者在等待
+     */
+    private Acquisition acquire(String key, String owner, LockOptions options, long waitMillis) {
+        String expireMillis = String.valueOf(options.expireMillis());
+        List<String> keys = options.fencing() ? List.of(key, key + FENCING_SUFFIX) : List.of(key);
+        // 脚本返回整数数组，不需要结果反序列化器
+        List<?> result = switch (options.type()) {
+            case EXCLUSIVE -> redisTemplate.execute(TRY_LOCK_LUA, StringRedisSerializer.UTF_8, null, keys, owner, expireMillis);
+            case READ -> redisTemplate.execute(READ_LOCK_LUA, StringRedisSerializer.UTF_8, null, List.of(key, key + READERS_SUFFIX), owner, expireMillis);
+            case WRITE -> redisTemplate.execute(WRITE_LOCK_LUA, StringRedisSerializer.UTF_8, null,
+                    options.fencing() ? List.of(key, key + READERS_SUFFIX, key + FENCING_SUFFIX) : List.of(key, key + READERS_SUFFIX),
+                    owner, expireMillis, String.valueOf(Math.max(0, waitMillis)));
+            case SEMAPHORE -> redisTemplate.execute(SEMAPHORE_ACQUIRE_LUA, StringRedisSerializer.UTF_8, null, List.of(key), owner, expireMillis,
+                    String.valueOf(options.permits()), IdUtils.getIdStr());
+        };
+        if (result == null || result.size() < 2) {
+            return new Acquisition(options.expireMillis(), 0);
+        }
+        return new Acquisition(((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue());
+    }
+
+    private MultiAcquisition acquireAll(List<String> sortedKeys, String owner, LockOptions options) {
+        // 脚本返回整数数组，不需要结果反序列化器
+        List<?> result = redisTemplate.execute(MULTI_TRY_LOCK_LUA, StringRedisSerializer.UTF_8, null, sortedKeys, owner, String.valueOf(options.expireMillis()));
+        if (result == null || result.size() < 2) {
+            return new MultiAcquisition(options.expireMillis(), 0);
+        }
+        long ttl = ((Number) result.get(0)).longValue();
+        // 脚本返回的下标从1开始
+        return new MultiAcquisition(ttl, ttl == 0 ? -1 : ((Number) result.get(1)).intValue() - 1);
+    }
+
+    private static List<String> sortKeys(Collection<String> keys) {
+        return keys.stream().distinct().sorted().toList();
+    }
+
+    private Acquisition await(String key, String owner, LockOptions options, long waitMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        // 先登记再尝试，登记之后的解锁通知会让下一次park立即返回，不会丢失
+        notifier.subscribe(key);
+        Acquisition acquisition = null;
+        try {
+            while (true) {
+                acquisition = acquire(key, owner, options, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                long remaining = deadline - System.nanoTime();
+                if (acquisition.locked() || remaining <= 0) {
+                    return acquisition;
+                }
+                // 通知丢失时最晚在锁过期后醒来重试
+                LockSupport.parkNanos(this, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(acquisition.ttl())));
+                if (Thread.currentThread().isInterrupted()) {
+                    // 被中断后parkNanos会立即返回，继续等待会变成对Redis的空转；不清除中断标记，交给调用方处理
+                    return acquisition;
+                }
+            }
+        } finally {
+            // 没抢到时转交可能带走的通知；读锁和信号量可以同时持有，抢到后也唤醒下一个等待者
+            notifier.unsubscribe(key, acquisition == null || !acquisition.locked() || options.shared());
+        }
+    }
+
+    /**
+     * @param ttl          获取成功为0，否则为锁的剩余过期毫秒
+     * @param fencingToken 获取成功且开启fencing时的token
+     */
+    private record Acquisition(long ttl, long fencingToken) {
+
+        private boolean locked() {
+            return ttl == 0;
+        }
+    }
+
+    /**
+     * @param ttl          获取成功为0，否则为被占用的锁的剩余过期毫秒
+     * @param blockedIndex 被占用的锁在排序后的key中的下标
+     */
+    private record MultiAcquisition(long ttl, int blockedIndex) {
+
+        private boolean locked() {
+            return ttl == 0;
+        }
+    }
+}
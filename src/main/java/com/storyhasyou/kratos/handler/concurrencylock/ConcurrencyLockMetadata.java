@@ -0,0 +1,107 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.annotation.ConcurrencyLock;
+import com.storyhasyou.kratos.utils.SpelUtils;
+import org.springframework.expression.Expression;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发锁方法的元数据，每个方法只在第一次调用时解析一次
+ *
+ * @param concurrencyLock 方法上的注解
+ * @param methodName      方法名
+ * @param keyExpression   key解析后的SPEL表达式
+ * @param parameterNames  方法的参数名
+ * @param fallbackKey     key解析失败时使用的锁key，即 prefix + key 原文
+ * @param lockOptions     加锁参数
+ * @param callback        抢不到锁时的回调
+ * @author fangxi
+ */
+record ConcurrencyLockMetadata(
+        ConcurrencyLock concurrencyLock,
+        String methodName,
+        Expression keyExpression,
+        String[] parameterNames,
+        String fallbackKey,
+        LockOptions lockOptions,
+        ConcurrencyLockCallback callback
+) {
+
+    /**
+     * 未配置过期时间时的默认值，秒
+     */
+    private static final int DEFAULT_EXPIRE_SECONDS = 10;
+
+    /**
+     * @throws IllegalStateException callbackClass没有对应的Bean
+     */
+    static ConcurrencyLockMetadata of(Method method, ConcurrencyLock concurrencyLock, Map<Class<?>, ConcurrencyLockCallback> concurrencyLockCallbacks) {
+        int expire = concurrencyLock.expireInSeconds() > 0 ? concurrencyLock.expireInSeconds() : DEFAULT_EXPIRE_SECONDS;
+        ConcurrencyLockCallback callback = callback(method, concurrencyLock, concurrencyLockCallbacks);
+        return new ConcurrencyLockMetadata(
+                concurrencyLock,
+                method.getName(),
+                SpelUtils.parseExpression(method, concurrencyLock.key()),
+                SpelUtils.getParameterNames(method),
+                concurrencyLock.prefix() + concurrencyLock.key(),
+                new LockOptions(concurrencyLock.type(), concurrencyLock.permits(), TimeUnit.SECONDS.toMillis(expire),
+                        concurrencyLock.watchdog(), concurrencyLock.waitTimeUnit().toMillis(concurrencyLock.waitTime()), concurrencyLock.fencing()),
+                callback);
+    }
+
+    /**
+     * @return callbackClass对应的回调实例
+     * @throws IllegalStateException callbackClass没有对应的Bean
+     */
+    static ConcurrencyLockCallback callback(Method method, ConcurrencyLock concurrencyLock, Map<Class<?>, ConcurrencyLockCallback> concurrencyLockCallbacks) {
+        Class<? extends ConcurrencyLockCallback> callbackClass = concurrencyLock.callbackClass();
+        ConcurrencyLockCallback callback = concurrencyLockCallbacks.get(callbackClass);
+        if (callback == null) {
+            throw new IllegalStateException("no ConcurrencyLockCallback bean of type " + callbackClass.getName() + " for " + method);
+        }
+        return callback;
+    }
+
+    /**
+     * 解析本次调用的锁key
+     *
+     * @param args 方法参数
+     * @return 锁key，SPEL解析失败时返回null
+     */
+    String resolveKey(Object[] args) {
+        String key = SpelUtils.evaluate(keyExpression, parameterNames, args);
+        return key == null ? null : concurrencyLock.prefix() + key;
+    }
+
+    /**
+     * 解析批量加锁时本次调用的全部锁key
+     *
+     * @param args 方法参数
+     * @return 锁key，SPEL解析失败时返回null；结果不是集合或数组时当作单个key
+     */
+    List<String> resolveKeys(Object[] args) {
+        Object value = SpelUtils.evaluateValue(keyExpression, parameterNames, args);
+        if (value == null) {
+            return null;
+        }
+        Collection<?> elements;
+        if (value instanceof Collection<?> collection) {
+            elements = collection;
+        } else if (value instanceof Object[] array) {
+            elements = Arrays.asList(array);
+        } else {
+            elements = List.of(value);
+        }
+        return elements.stream()
+                .filter(Objects::nonNull)
+                .map(element -> concurrencyLock.prefix() + element)
+                .toList();
+    }
+}
@@ -0,0 +1,26 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+/**
+ * 并发锁的统计扩展点，由 {@link ConcurrencyLockAspect} 在加锁和解锁后回调
+ *
+ * @author fangxi
+ */
+public interface ConcurrencyLockMetrics {
+
+    /**
+     * 记录一次加锁
+     *
+     * @param prefix       注解声明的锁前缀，取值个数等于声明个数，可以安全地作为指标的tag
+     * @param acquired     是否获取成功，失败即发生了锁竞争
+     * @param elapsedNanos 加锁耗时（包括等待时间），纳秒
+     */
+    void recordAcquire(String prefix, boolean acquired, long elapsedNanos);
+
+    /**
+     * 记录一次锁的持有时间
+     *
+     * @param prefix       注解声明的锁前缀
+     * @param elapsedNanos 从获取成功到释放的时间，纳秒
+     */
+    void recordHold(String prefix, long elapsedNanos);
+}
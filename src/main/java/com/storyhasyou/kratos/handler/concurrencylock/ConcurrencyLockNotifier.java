@@ -0,0 +1,80 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 解锁通知
+ * <p>
+ * 解锁脚本完全释放锁时向 {@link ConcurrencyLockHandler#UNLOCK_CHANNEL} 发布锁key，
+ * 本实例收到后唤醒这个key上排在最前面的等待线程，等待线程不需要轮询Redis。
+ * 每次只唤醒一个等待者，避免上千个排队的请求同时涌向Redis；
+ * 被唤醒的等待者没抢到锁时继续排在队首，等下一次解锁。
+ * </p>
+ *
+ * @author fangxi
+ */
+public class ConcurrencyLockNotifier implements MessageListener {
+
+    private final Map<String, Queue<Thread>> waiters = new ConcurrentHashMap<>();
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        signal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 当前线程开始等待key，需要在最后一次尝试加锁之前调用，避免错过期间的解锁通知
+     *
+     * @param key 锁key
+     */
+    void subscribe(String key) {
+        // 在compute中入队，与unsubscribe删除空队列互斥，不会排进已经被删除的队列
+        waiters.compute(key, (k, queue) -> {
+            Queue<Thread> current = queue == null ? new ConcurrentLinkedQueue<>() : queue;
+            current.add(Thread.currentThread());
+            return current;
+        });
+    }
+
+    /**
+     * 当前线程结束等待
+     *
+     * @param key    锁key
+     * @param passOn 是否唤醒下一个等待者。没拿到锁就离开时可能带走了一次解锁通知，需要转交给下一个等待者
+     */
+    void unsubscribe(String key, boolean passOn) {
+        waiters.computeIfPresent(key, (k, queue) -> {
+            queue.remove(Thread.currentThread());
+            return queue.isEmpty() ? null : queue;
+        });
+        if (passOn) {
+            signal(key);
+        }
+    }
+
+    /**
+     * @return 正在等待的key的个数
+     */
+    public int size() {
+        return waiters.size();
+    }
+
+    private void signal(String key) {
+        Queue<Thread> queue = waiters.get(key);
+        if (queue == null) {
+            return;
+        }
+        Thread head = queue.peek();
+        if (head != null) {
+            LockSupport.unpark(head);
+        }
+    }
+}
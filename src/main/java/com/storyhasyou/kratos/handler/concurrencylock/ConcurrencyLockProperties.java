@@ -0,0 +1,41 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 并发锁配置
+ *
+ * @author fangxi
+ */
+@Data
+@ConfigurationProperties(prefix = "blades-of-chaos.concurrency-lock")
+public class ConcurrencyLockProperties {
+
+    /**
+     * 看门狗续期配置
+     */
+    private Watchdog watchdog = new Watchdog();
+
+    /**
+     * 是否在Redis前加一层本地锁，同一个JVM中同一把锁只有一个线程去Redis竞争，其余线程直接失败或在本地排队
+     */
+    private boolean localLock = true;
+
+    @Data
+    public static class Watchdog {
+
+        /**
+         * 是否开启看门狗，关闭后所有锁都只在 expireInSeconds 内有效
+         */
+        private boolean enabled = true;
+
+        /**
+         * 检查续期的间隔，续期最晚在 过期时间 - interval - 过期时间 / 10 时发出；
+         * 过期时间不足interval的10/9倍的锁来不及续期，登记时打印警告
+         */
+        private Duration interval = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,200 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.enums.LockTypeEnum;
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁的看门狗
+ * <p>
+ * 所有被持有的锁登记在一张表里，由一个共享的调度线程每隔 interval 检查一次，
+ * 需要续期的锁在同一次pipeline中批量续期，每个tick只有一次网络往返。
+ * 距离上次续期超过 min(过期时间 / 3, 过期时间 - interval - 过期时间 / 10) 的锁需要续期：检查本身最多晚一个interval，
+ * 再留出十分之一过期时间的余量给网络往返，续期一定在锁过期之前到达。过期时间不足 interval 的10/9倍时来不及续期，登记时打印警告。
+ * 持有锁的线程不需要额外的线程，持有数千把锁时开销也只是表中的一项。
+ * 持有锁的JVM宕机后续期停止，锁在过期时间后自动释放。
+ * </p>
+ *
+ * @author fangxi
+ */
+@Slf4j
+public class ConcurrencyLockWatchdog implements AutoCloseable {
+
+    private static final RedisScript<Long> RENEW_LUA = RedisScript.of(LuaScriptConstant.RENEW_LOCK, Long.class);
+    private static final RedisScript<Long> SEMAPHORE_RENEW_LUA = RedisScript.of(LuaScriptConstant.SEMAPHORE_RENEW, Long.class);
+    private static final RedisScript<Long> READ_RENEW_LUA = RedisScript.of(LuaScriptConstant.RENEW_READ_LOCK, Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    /**
+     * 读锁和信号量可以被同一个JVM中的多个线程同时持有，按 锁key + 持有者 登记
+     */
+    private final Map<LockId, HeldLock> heldLocks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final long intervalMillis;
+    /**
+     * 已经警告过来不及续期的过期时间，每个值只警告一次
+     */
+    private final Set<Long> warnedExpireMillis = ConcurrentHashMap.newKeySet();
+
+    public ConcurrencyLockWatchdog(RedisTemplate<String, Object> redisTemplate, Duration interval) {
+        this.redisTemplate = redisTemplate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("concurrency-lock-watchdog").daemon().factory());
+        this.intervalMillis = interval.toMillis();
+        this.scheduler.scheduleWithFixedDelay(this::renewSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记一把获取成功的互斥锁，重入时增加持有次数
+     *
+     * @param key          锁key
+     * @param owner        持有者标识
+     * @param expireMillis 锁的过期时间，毫秒
+     */
+    public void watch(String key, String owner, long expireMillis) {
+        watch(key, owner, LockOptions.exclusive(expireMillis));
+    }
+
+    /**
+     * 登记一把获取成功的锁，重入时增加持有次数
+     *
+     * @param key     锁key
+     * @param owner   持有者标识
+     * @param options 加锁参数
+     */
+    public void watch(String key, String owner, LockOptions options) {
+        long expireMillis = options.expireMillis();
+        if (intervalMillis + expireMillis / 10 > expireMillis && warnedExpireMillis.add(expireMillis)) {
+            log.warn("concurrency lock {} expires in {}ms, watchdog interval {}ms is too long to renew it in time, "
+                    + "use a longer expiration or a shorter blades-of-chaos.concurrency-lock.watchdog.interval", key, expireMillis, intervalMillis);
+        }
+        heldLocks.compute(new LockId(key, owner), (id, held) -> {
+            if (held != null) {
+                held.holdCount++;
+                return held;
+            }
+            return new HeldLock(options.type(), expireMillis, renewAfterMillis(expireMillis));
+        });
+    }
+
+    /**
+     * @param expireMillis 锁的过期时间，毫秒
+     * @return 距离上次续期多久之后需要再次续期，毫秒
+     */
+    long renewAfterMillis(long expireMillis) {
+        return Math.max(0L, Math.min(expireMillis / 3, expireMillis - intervalMillis - expireMillis / 10));
+    }
+
+    /**
+     * 释放一次锁，持有次数减到0时不再续期
+     *
+     * @param key   锁key
+     * @param owner 持有者标识
+     */
+    public void unwatch(String key, String owner) {
+        heldLocks.computeIfPresent(new LockId(key, owner), (id, held) -> --held.holdCount > 0 ? held : null);
+    }
+
+    /**
+     * @return 当前登记的锁的个数
+     */
+    public int size() {
+        return heldLocks.size();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void renewSafely() {
+        try {
+            renew();
+        } catch (Exception e) {
+            // 不能让异常终止调度，下一个tick重试
+            log.warn("renew concurrency locks failed", e);
+        }
+    }
+
+    private void renew() {
+        long now = System.currentTimeMillis();
+        List<LockId> ids = new ArrayList<>();
+        List<HeldLock> locks = new ArrayList<>();
+        heldLocks.forEach((id, held) -> {
+            if (now - held.renewedAt >= held.renewAfterMillis) {
+                ids.add(id);
+                locks.add(held);
+            }
+        });
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // 每次pipeline开头都先SCRIPT LOAD，Redis重启或主从切换后EVALSHA也不会出现NOSCRIPT
+            connection.scriptingCommands().scriptLoad(RENEW_LUA.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+            connection.scriptingCommands().scriptLoad(SEMAPHORE_RENEW_LUA.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+            connection.scriptingCommands().scriptLoad(READ_RENEW_LUA.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < ids.size(); i++) {
+                HeldLock held = locks.get(i);
+                byte[] key = StringRedisSerializer.UTF_8.serialize(ids.get(i).key());
+                byte[] owner = StringRedisSerializer.UTF_8.serialize(ids.get(i).owner());
+                byte[] expireMillis = StringRedisSerializer.UTF_8.serialize(String.valueOf(held.expireMillis));
+                switch (held.type) {
+                    case SEMAPHORE -> connection.scriptingCommands().evalSha(SEMAPHORE_RENEW_LUA.getSha1(), ReturnType.INTEGER, 1, key, owner, expireMillis);
+                    // 读者单独过期，续期时同时更新读者集合中自己的过期时间
+                    case READ -> connection.scriptingCommands().evalSha(READ_RENEW_LUA.getSha1(), ReturnType.INTEGER, 2, key,
+                            StringRedisSerializer.UTF_8.serialize(ids.get(i).key() + ConcurrencyLockHandler.READERS_SUFFIX), owner, expireMillis);
+                    default -> connection.scriptingCommands().evalSha(RENEW_LUA.getSha1(), ReturnType.INTEGER, 1, key, owner, expireMillis);
+                }
+            }
+            return null;
+        }, StringRedisSerializer.UTF_8);
+        // 前三个结果是SCRIPT LOAD
+        for (int i = 0; i < ids.size(); i++) {
+            HeldLock held = locks.get(i);
+            if (Long.valueOf(1L).equals(results.get(i + 3))) {
+                held.renewedAt = now;
+            } else {
+                // 锁已经过期或被其他持有者占用，不再续期
+                log.warn("concurrency lock {} was lost before renewal", ids.get(i).key());
+                heldLocks.remove(ids.get(i), held);
+            }
+        }
+    }
+
+    private record LockId(String key, String owner) {
+    }
+
+    private static final class HeldLock {
+
+        private final LockTypeEnum type;
+        private final long expireMillis;
+        private final long renewAfterMillis;
+        /**
+         * 只在 {@link ConcurrentHashMap#compute} 中修改
+         */
+        private int holdCount = 1;
+        private volatile long renewedAt = System.currentTimeMillis();
+
+        private HeldLock(LockTypeEnum type, long expireMillis, long renewAfterMillis) {
+            this.type = type;
+            this.expireMillis = expireMillis;
+            this.renewAfterMillis = renewAfterMillis;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.enums.LockTypeEnum;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 当前JVM中正在持有的并发锁
+ * <p>
+ * 由 {@link ConcurrencyLockAspect} 在获取成功后登记、释放后移除，每次登记都是独立的一条记录，
+ * 同一个线程重入同一把锁时会有多条记录。只记录本JVM通过注解持有的锁，不查询Redis。
+ * </p>
+ *
+ * @author fangxi
+ */
+public class HeldLockRegistry {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, HeldLock> heldLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 登记一把当前线程刚获取的锁
+     *
+     * @param key  锁key，批量加锁时为全部key
+     * @param type 锁的类型
+     * @return 登记号，释放时传给 {@link #release(long)}
+     */
+    public long register(String key, LockTypeEnum type) {
+        long handle = sequence.incrementAndGet();
+        heldLocks.put(handle, new HeldLock(key, type, Thread.currentThread().getName(), Instant.now()));
+        return handle;
+    }
+
+    /**
+     * @param handle {@link #register(String, LockTypeEnum)} 返回的登记号
+     */
+    public void release(long handle) {
+        heldLocks.remove(handle);
+    }
+
+    /**
+     * @return 正在持有的锁，持有时间最长的在前
+     */
+    public List<HeldLock> heldLocks() {
+        return heldLocks.values().stream()
+                .sorted(Comparator.comparing(HeldLock::acquiredAt))
+                .toList();
+    }
+
+    /**
+     * @return 正在持有的锁的个数
+     */
+    public int size() {
+        return heldLocks.size();
+    }
+
+    /**
+     * @param key        锁key
+     * @param type       锁的类型
+     * @param thread     持有锁的线程名
+     * @param acquiredAt 获取锁的时间
+     */
+    public record HeldLock(String key, LockTypeEnum type, String thread, Instant acquiredAt) {
+
+        /**
+         * @return 已经持有的毫秒数
+         */
+        public long ageMillis() {
+            return Duration.between(acquiredAt, Instant.now()).toMillis();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分布式锁前面的本地锁表
+ * <p>
+ * 以锁key为单位维护本地的 {@link ReentrantLock}，同一个JVM中只有拿到本地锁的线程才会去Redis抢锁，
+ * 其他线程直接失败或者在本地排队，重复提交风暴下Redis的请求量只与节点数相关，与并发线程数无关。
+ * 按精确的key而不是分段加锁，不同的key之间互不影响；没有线程使用的key会立即从表中移除。
+ * </p>
+ *
+ * @author fangxi
+ */
+public class LocalLockTable {
+
+    private final Map<String, Entry> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程获取本地锁，已持有时重入
+     *
+     * @param key        锁key
+     * @param waitMillis 最长等待时间，毫秒，小于等于0时不等待
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String key, long waitMillis) {
+        Entry entry = locks.compute(key, (k, current) -> {
+            Entry e = current == null ? new Entry() : current;
+            e.references++;
+            return e;
+        });
+        boolean locked = false;
+        try {
+            locked = waitMillis <= 0 ? entry.lock.tryLock() : entry.lock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!locked) {
+                release(key);
+            }
+        }
+        return locked;
+    }
+
+    /**
+     * 当前线程释放本地锁
+     *
+     * @param key 锁key
+     */
+    public void unlock(String key) {
+        Entry entry = locks.get(key);
+        if (entry == null || !entry.lock.isHeldByCurrentThread()) {
+            return;
+        }
+        entry.lock.unlock();
+        release(key);
+    }
+
+    /**
+     * @return 表中的key个数，即正在持有或等待本地锁的key个数
+     */
+    public int size() {
+        return locks.size();
+    }
+
+    private void release(String key) {
+        locks.computeIfPresent(key, (k, entry) -> --entry.references == 0 ? null : entry);
+    }
+
+    private static final class Entry {
+
+        /**
+         * 公平锁，本地排队的线程按到达顺序去Redis抢锁
+         */
+        private final ReentrantLock lock = new ReentrantLock(true);
+        /**
+         * 持有和等待这把锁的次数，只在 {@link ConcurrentHashMap#compute} 中修改，为0时从表中移除
+         */
+        private int references;
+    }
+}
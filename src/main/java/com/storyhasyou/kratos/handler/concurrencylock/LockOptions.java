@@ -0,0 +1,54 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.enums.LockTypeEnum;
+
+/**
+ * 一次加锁的参数
+ *
+ * @param type         锁的类型
+ * @param permits      信号量的许可数，其他类型忽略
+ * @param expireMillis 锁的过期时间，毫秒
+ * @param renew        是否由看门狗在持有期间自动续期
+ * @param waitMillis   锁被占用时的最长等待时间，毫秒，小于等于0时不等待
+ * @param fencing      是否生成fencing token，只对互斥锁和写锁生效
+ * @author fangxi
+ */
+public record LockOptions(LockTypeEnum type, int permits, long expireMillis, boolean renew, long waitMillis, boolean fencing) {
+
+    /**
+     * @param expireMillis 锁的过期时间，毫秒
+     * @return 不续期、不等待的互斥锁
+     */
+    public static LockOptions exclusive(long expireMillis) {
+        return new LockOptions(LockTypeEnum.EXCLUSIVE, 1, expireMillis, false, 0, false);
+    }
+
+    /**
+     * @return 是否在Redis前使用本地锁表，只有互斥的锁可以在本地合并竞争
+     */
+    boolean localExclusive() {
+        return localExclusive(type);
+    }
+
+    private static boolean localExclusive(LockTypeEnum type) {
+        return type == LockTypeEnum.EXCLUSIVE || type == LockTypeEnum.WRITE;
+    }
+
+    /**
+     * @return 是否允许多个持有者同时持有
+     */
+    boolean shared() {
+        return type == LockTypeEnum.READ || type == LockTypeEnum.SEMAPHORE;
+    }
+
+    public LockOptions {
+        // 读锁和信号量可以同时被多个持有者持有，fencing token没有意义
+        fencing = fencing && localExclusive(type);
+        if (expireMillis <= 0) {
+            throw new IllegalArgumentException("expireMillis必须大于0");
+        }
+        if (type == LockTypeEnum.SEMAPHORE && permits <= 0) {
+            throw new IllegalArgumentException("信号量的permits必须大于0");
+        }
+    }
+}
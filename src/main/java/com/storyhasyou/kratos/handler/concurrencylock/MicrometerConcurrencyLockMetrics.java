@@ -0,0 +1,73 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的并发锁指标：
+ * <ul>
+ *     <li>concurrency.lock.acquire{prefix, result=acquired|rejected}：加锁耗时，rejected的次数占比即锁竞争率</li>
+ *     <li>concurrency.lock.hold{prefix}：锁的持有时间</li>
+ * </ul>
+ * tag只使用锁前缀，不使用解析后的key，指标个数与注解声明个数成正比
+ *
+ * @author fangxi
+ */
+public class MicrometerConcurrencyLockMetrics implements ConcurrencyLockMetrics {
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final Map<String, Meters> metersCache = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * MeterRegistry在第一次记录时才获取，避免切面创建时提前初始化MeterRegistry
+     */
+    public MicrometerConcurrencyLockMetrics(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public void recordAcquire(String prefix, boolean acquired, long elapsedNanos) {
+        Meters meters = meters(prefix);
+        if (meters != null) {
+            (acquired ? meters.acquired : meters.rejected).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void recordHold(String prefix, long elapsedNanos) {
+        Meters meters = meters(prefix);
+        if (meters != null) {
+            meters.hold.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Meters meters(String prefix) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            registry = meterRegistryProvider.getIfAvailable();
+            if (registry == null) {
+                return null;
+            }
+            meterRegistry = registry;
+        }
+        MeterRegistry finalRegistry = registry;
+        return metersCache.computeIfAbsent(prefix, name -> Meters.register(finalRegistry, name));
+    }
+
+    private record Meters(Timer acquired, Timer rejected, Timer hold) {
+
+        private static Meters register(MeterRegistry registry, String prefix) {
+            return new Meters(
+                    Timer.builder("concurrency.lock.acquire").tag("prefix", prefix).tag("result", "acquired").register(registry),
+                    Timer.builder("concurrency.lock.acquire").tag("prefix", prefix).tag("result", "rejected").register(registry),
+                    Timer.builder("concurrency.lock.hold").tag("prefix", prefix).register(registry)
+            );
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.storyhasyou.kratos.handler.workerid;
+
+import com.storyhasyou.kratos.toolkit.WorkerIdAllocator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 基于本地文件的机器号分配
+ * <p>
+ * 作为Redis不可用时的兜底：优先使用文件中上一次从Redis租到的节点号，同一台机器重启后沿用；
+ * 文件不存在时由主机名和进程号推算一个节点号并写入文件。不同机器之间不做协调，不能保证集群内唯一。
+ * </p>
+ *
+ * @author fangxi
+ */
+@Slf4j
+public class FileWorkerIdAllocator implements WorkerIdAllocator {
+
+    private final Path file;
+
+    public FileWorkerIdAllocator(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public long allocate(long maxNodeId) {
+        Long stored = read();
+        if (stored != null && stored >= 0 && stored <= maxNodeId) {
+            log.info("use worker id {} cached in {}", stored, file);
+            return stored;
+        }
+        long nodeId = (localName().hashCode() & 0xffff) % (maxNodeId + 1);
+        store(nodeId);
+        log.warn("no cached worker id in {}, derived {} from host name and pid, it is not guaranteed to be unique", file, nodeId);
+        return nodeId;
+    }
+
+    /**
+     * 记录分配到的节点号，下次Redis不可用时沿用
+     *
+     * @param nodeId 节点号
+     */
+    public void store(long nodeId) {
+        try {
+            Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(file, String.valueOf(nodeId), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("failed to cache worker id in {}", file, e);
+        }
+    }
+
+    private Long read() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            log.warn("failed to read worker id cached in {}", file, e);
+            return null;
+        }
+    }
+
+    private static String localName() {
+        String pid = String.valueOf(ManagementFactory.getRuntimeMXBean().getPid());
+        try {
+            return InetAddress.getLocalHost().getHostName() + "@" + pid;
+        } catch (IOException e) {
+            return pid;
+        }
+    }
+}
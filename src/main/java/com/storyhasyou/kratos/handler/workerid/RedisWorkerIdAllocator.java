@@ -0,0 +1,266 @@
+package com.storyhasyou.kratos.handler.workerid;
+
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import com.storyhasyou.kratos.toolkit.WorkerIdAllocator;
+import com.storyhasyou.kratos.utils.IdUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 基于Redis租约的机器号分配
+ * <p>
+ * 所有节点号的租约保存在一个HASH中，启动时从随机位置开始查找第一个没有租约或租约已到期的节点号，
+ * 之后每隔租期的三分之一续租一次，关闭时归还。进程异常退出时租约到期后自动释放，节点号可以被其他节点复用。
+ * 分配成功后把节点号写入本地文件，Redis不可用时由 {@link FileWorkerIdAllocator} 沿用上一次的节点号。
+ * </p>
+ * <p>
+ * 租约失效时不会继续使用原来的节点号：续租发现节点号已被其他节点租走时，暂停 {@link IdUtils} 取号并重新租用，
+ * 租到后通过 {@link IdUtils#initialize(WorkerIdAllocator)} 换用新的节点号；连续续租失败、下一次续租之前租约就会到期时，
+ * 同样暂停取号，直到续租成功或换用新的节点号。启动时使用本地文件兜底的节点号没有经过Redis确认，
+ * 心跳会在后台继续向Redis租用，租到后同样换用新的节点号。
+ * </p>
+ * <p>
+ * 每次租用或续租成功后通过 {@link IdUtils#leaseUntil(long)} 设置取号的截止时间：发起请求的时间加租期再减去十分之一租期的余量，
+ * 早于Redis中租约实际到期的时间。续租卡住或心跳线程停顿时，取号在截止时间之后直接失败，不依赖心跳及时暂停。
+ * 每个Redis命令最多等待续租间隔的一半，超时后按失败处理，不会让一次卡住的调用占满整个租期。
+ * </p>
+ *
+ * @author fangxi
+ */
+@Slf4j
+public class RedisWorkerIdAllocator implements WorkerIdAllocator, AutoCloseable {
+
+    /**
+     * 节点号租约的HASH
+     */
+    public static final String LEASE_KEY = "blades-of-chaos:worker-id";
+    private static final RedisScript<Long> ALLOCATE_LUA = RedisScript.of(LuaScriptConstant.ALLOCATE_WORKER_ID, Long.class);
+    private static final RedisScript<Long> RENEW_LUA = RedisScript.of(LuaScriptConstant.RENEW_WORKER_ID, Long.class);
+    private static final RedisScript<Long> RELEASE_LUA = RedisScript.of(LuaScriptConstant.RELEASE_WORKER_ID, Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long leaseMillis;
+    /**
+     * Redis不可用时的兜底，为null时直接抛出异常
+     */
+    private final FileWorkerIdAllocator fallback;
+    private final String owner = UUID.randomUUID().toString();
+    private final ScheduledExecutorService scheduler;
+    /**
+     * 执行Redis命令，调用方只等待 commandTimeoutNanos，卡住的命令不会阻塞心跳线程
+     */
+    private final ExecutorService redisExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long intervalNanos;
+    private final long commandTimeoutNanos;
+    /**
+     * 取号截止时间相对租期的余量，抵消本机与Redis之间的时钟频率误差
+     */
+    private final long marginNanos;
+    private final AtomicBoolean started = new AtomicBoolean();
+    /**
+     * 当前使用的节点号，包括本地文件兜底的节点号
+     */
+    private volatile long nodeId = -1L;
+    /**
+     * 当前节点号是否持有Redis租约
+     */
+    private volatile boolean leased;
+    /**
+     * 因租约失效暂停了取号
+     */
+    private volatile boolean suspended;
+    /**
+     * 最近一次租用或续租成功时发起请求的时间，{@link System#nanoTime()}
+     */
+    private volatile long renewedNanos;
+    private volatile long maxNodeId;
+
+    public RedisWorkerIdAllocator(RedisTemplate<String, Object> redisTemplate, Duration lease, FileWorkerIdAllocator fallback) {
+        this.redisTemplate = redisTemplate;
+        this.leaseMillis = lease.toMillis();
+        this.fallback = fallback;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, leaseMillis / 3));
+        this.commandTimeoutNanos = intervalNanos / 2;
+        this.marginNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis) / 10;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("worker-id-heartbeat").daemon().factory());
+    }
+
+    @Override
+    public long allocate(long maxNodeId) {
+        this.maxNodeId = maxNodeId;
+        long startNanos = System.nanoTime();
+        Long allocated;
+        try {
+            allocated = lease(maxNodeId);
+        } catch (Exception e) {
+            if (fallback == null) {
+                throw e;
+            }
+            log.warn("allocate worker id from redis failed, fall back to local file and keep retrying in background", e);
+            nodeId = fallback.allocate(maxNodeId);
+            leased = false;
+            IdUtils.clearLeaseDeadline();
+            startHeartbeat();
+            return nodeId;
+        }
+        if (allocated == null || allocated < 0) {
+            throw new IllegalStateException("all " + (maxNodeId + 1) + " worker ids are leased");
+        }
+        leased(allocated, startNanos);
+        startHeartbeat();
+        log.info("leased worker id {} from redis", allocated);
+        return allocated;
+    }
+
+    /**
+     * @return 当前使用的节点号，还没有分配时为-1
+     */
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return 当前节点号是否持有Redis租约，使用本地文件兜底的节点号或租约失效时为false
+     */
+    public boolean isLeased() {
+        return leased;
+    }
+
+    /**
+     * 停止续租并归还节点号
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        long current = nodeId;
+        try {
+            if (leased && current >= 0) {
+                call(() -> redisTemplate.execute(RELEASE_LUA, StringRedisSerializer.UTF_8, null, List.of(LEASE_KEY), owner, String.valueOf(current)));
+            }
+        } catch (Exception e) {
+            // 归还失败时租约到期后自动释放
+            log.warn("release worker id {} failed", current, e);
+        } finally {
+            redisExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 一次心跳：持有租约时续租，没有租约时重新租用；只在心跳线程中执行
+     */
+    void heartbeat() {
+        long startNanos = System.nanoTime();
+        try {
+            if (leased) {
+                if (renew()) {
+                    renewedNanos = startNanos;
+                    IdUtils.leaseUntil(startNanos + TimeUnit.MILLISECONDS.toNanos(leaseMillis) - marginNanos);
+                    if (suspended) {
+                        suspended = false;
+                        IdUtils.resume();
+                        log.info("worker id {} renewed, resume id generation", nodeId);
+                    }
+                    return;
+                }
+                leased = false;
+                suspend("worker id " + nodeId + " has been leased by another instance");
+            }
+            Long allocated = lease(maxNodeId);
+            if (allocated == null || allocated < 0) {
+                log.error("all {} worker ids are leased, keep using worker id {} without lease", maxNodeId + 1, nodeId);
+                return;
+            }
+            long previous = nodeId;
+            leased(allocated, startNanos);
+            // 节点号没有变化时沿用原来的生成器并解除暂停
+            IdUtils.initialize(max -> allocated);
+            suspended = false;
+            log.info("leased worker id {} from redis, previous worker id {}", allocated, previous);
+        } catch (Exception e) {
+            // 不能让异常终止调度，下一次重试
+            log.warn("renew worker id {} failed", nodeId, e);
+            if (leased && !suspended && System.nanoTime() - renewedNanos + intervalNanos >= TimeUnit.MILLISECONDS.toNanos(leaseMillis) - marginNanos) {
+                // 下一次心跳之前就会超过取号截止时间，之后节点号可能被其他节点租走
+                suspend("lease of worker id " + nodeId + " is not renewed in " + leaseMillis + "ms");
+            }
+        }
+    }
+
+    private Long lease(long maxNodeId) {
+        long start = ThreadLocalRandom.current().nextLong(maxNodeId + 1);
+        return call(() -> redisTemplate.execute(ALLOCATE_LUA, StringRedisSerializer.UTF_8, null, List.of(LEASE_KEY),
+                owner, String.valueOf(leaseMillis), String.valueOf(maxNodeId), String.valueOf(start)));
+    }
+
+    /**
+     * @return 是否续租成功，没有拿到结果时按失败处理
+     */
+    private boolean renew() {
+        Long renewed = call(() -> redisTemplate.execute(RENEW_LUA, StringRedisSerializer.UTF_8, null, List.of(LEASE_KEY),
+                owner, String.valueOf(leaseMillis), String.valueOf(nodeId)));
+        return renewed != null && renewed != 0;
+    }
+
+    /**
+     * 在虚拟线程中执行Redis命令，最多等待 commandTimeoutNanos，不受客户端命令超时（Lettuce默认60秒）的影响
+     */
+    private Long call(Supplier<Long> command) {
+        Future<Long> future = redisExecutor.submit(command::get);
+        try {
+            return future.get(commandTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new QueryTimeoutException("redis command of worker id lease timed out in " + TimeUnit.NANOSECONDS.toMillis(commandTimeoutNanos) + "ms", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for redis", e);
+        }
+    }
+
+    private void leased(long allocated, long startNanos) {
+        nodeId = allocated;
+        renewedNanos = startNanos;
+        leased = true;
+        IdUtils.leaseUntil(startNanos + TimeUnit.MILLISECONDS.toNanos(leaseMillis) - marginNanos);
+        if (fallback != null) {
+            fallback.store(allocated);
+        }
+    }
+
+    private void suspend(String reason) {
+        if (!suspended) {
+            suspended = true;
+            IdUtils.suspend(reason);
+        }
+        log.error("{}, suspend id generation until a lease is obtained", reason);
+    }
+
+    private void startHeartbeat() {
+        if (started.compareAndSet(false, true)) {
+            scheduler.scheduleWithFixedDelay(this::heartbeat, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
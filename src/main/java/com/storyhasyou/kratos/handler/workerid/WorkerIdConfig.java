@@ -0,0 +1,31 @@
+package com.storyhasyou.kratos.handler.workerid;
+
+import com.storyhasyou.kratos.utils.IdUtils;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 开启后启动时从Redis租用节点号并初始化 {@link IdUtils}
+ *
+ * @author fangxi
+ */
+@SpringBootConfiguration
+@ConditionalOnClass(RedisOperations.class)
+@ConditionalOnProperty(prefix = "blades-of-chaos.worker-id", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(WorkerIdProperties.class)
+public class WorkerIdConfig {
+
+    @Bean
+    public RedisWorkerIdAllocator redisWorkerIdAllocator(RedisTemplate<String, Object> redisTemplate, WorkerIdProperties workerIdProperties) {
+        RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, workerIdProperties.getLease(),
+                new FileWorkerIdAllocator(workerIdProperties.getCacheFile()));
+        // 启动时分配一次，之后取号不再访问Redis
+        IdUtils.initialize(allocator);
+        return allocator;
+    }
+}
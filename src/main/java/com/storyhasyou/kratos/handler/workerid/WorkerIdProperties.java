@@ -0,0 +1,32 @@
+package com.storyhasyou.kratos.handler.workerid;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 机器号分配配置
+ *
+ * @author fangxi
+ */
+@Data
+@ConfigurationProperties(prefix = "blades-of-chaos.worker-id")
+public class WorkerIdProperties {
+
+    /**
+     * 是否在启动时从Redis租用集群内唯一的节点号，并用它初始化 IdUtils
+     */
+    private boolean enabled = false;
+
+    /**
+     * 租期，每隔租期的三分之一续租一次；进程异常退出后节点号最多在一个租期后被复用
+     */
+    private Duration lease = Duration.ofSeconds(30);
+
+    /**
+     * 缓存节点号的本地文件，Redis不可用时沿用
+     */
+    private Path cacheFile = Path.of(System.getProperty("user.home"), ".blades-of-chaos", "worker-id");
+}
@@ -0,0 +1,260 @@
+package com.storyhasyou.kratos.toolkit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 预生成ID的环形缓冲区（参考百度UidGenerator的CachedUidGenerator）
+ * <p>
+ * 一个后台生产线程按毫秒整块生成ID填入环形缓冲区，取号线程只CAS推进消费游标，不读时钟、不自旋等下一毫秒。
+ * 生产线程使用逻辑时间：每用完一个毫秒的全部序列（默认布局为4096个），逻辑时间加一毫秒，取号速度超过时钟时向未来借用时间，
+ * 空闲时逻辑时间追上真实时钟；借用的时间超过 maxBorrowMillis 时暂停生产，等待时钟追上。
+ * 逻辑时间只增不减，时钟回拨不会产生重复ID。
+ * </p>
+ * <p>
+ * 借用未来时间意味着进程在借用期间重启，新进程可能从更早的时间开始发号，
+ * 需要保证重启间隔大于 maxBorrowMillis，或者重启后使用不同的workerId。
+ * </p>
+ *
+ * @author fangxi
+ */
+@Slf4j
+public final class CachedSequence implements AutoCloseable {
+
+    /**
+     * 默认最多借用的未来时间，毫秒
+     */
+    public static final long DEFAULT_MAX_BORROW_MILLIS = 2000L;
+    /**
+     * 缓冲区充足时生产线程的检查间隔
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    /**
+     * 借用时间达到上限时，等待时钟追上的检查间隔
+     */
+    private static final long BORROW_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * 缓冲区为空时取号线程自旋的次数，超过后挂起等待生产线程唤醒
+     */
+    private static final int SPIN_TRIES = 64;
+
+    private final Sequence sequence;
+    private final long sequenceMask;
+    private final long[] slots;
+    private final int mask;
+    /**
+     * 剩余ID少于该值时唤醒生产线程，为缓冲区大小的一半
+     */
+    private final int paddingThreshold;
+    private final long maxBorrowMillis;
+    /**
+     * 最后一个已填充的位置，只由生产线程写入
+     */
+    private final PaddedAtomicLong tail = new PaddedAtomicLong(-1L);
+    /**
+     * 最后一个已取走的位置
+     */
+    private final PaddedAtomicLong cursor = new PaddedAtomicLong(-1L);
+    private final Thread producer;
+    /**
+     * 缓冲区为空时挂起的取号线程，生产线程填充槽位后唤醒
+     */
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    /**
+     * 以下两个字段只由生产线程读写
+     */
+    private long logicalOffsetTime;
+    private long nextSequence;
+
+    /**
+     * @param sequence   提供数据中心ID、机器ID和位布局，交给环形缓冲区后不能再直接用它取号
+     * @param bufferSize 缓冲区大小，向上取整为2的幂
+     */
+    public CachedSequence(Sequence sequence, int bufferSize) {
+        this(sequence, bufferSize, DEFAULT_MAX_BORROW_MILLIS);
+    }
+
+    /**
+     * @param sequence        提供数据中心ID、机器ID和位布局，交给环形缓冲区后不能再直接用它取号
+     * @param bufferSize      缓冲区大小，向上取整为2的幂
+     * @param maxBorrowMillis 最多借用的未来时间，毫秒
+     */
+    public CachedSequence(Sequence sequence, int bufferSize, long maxBorrowMillis) {
+        if (bufferSize < 2 || bufferSize > 1 << 30) {
+            throw new IllegalArgumentException("Buffer size must be between 2 and 2^30");
+        }
+        if (maxBorrowMillis < 0) {
+            throw new IllegalArgumentException("Max borrow millis can't be less than 0");
+        }
+        int capacity = Integer.highestOneBit(bufferSize - 1) << 1;
+        this.sequence = sequence;
+        this.sequenceMask = sequence.layout().sequenceMask();
+        this.slots = new long[capacity];
+        this.mask = capacity - 1;
+        this.paddingThreshold = capacity >> 1;
+        this.maxBorrowMillis = maxBorrowMillis;
+        // 从sequence上一次发号之后的毫秒开始，不与它已经发出的ID重复
+        this.logicalOffsetTime = sequence.lastOffsetTime();
+        this.nextSequence = sequenceMask + 1;
+        this.producer = Thread.ofPlatform()
+                .name("cached-sequence-producer")
+                .daemon(true)
+                .start(this::produce);
+    }
+
+    /**
+     * 获取ID，缓冲区为空时唤醒生产线程，短暂自旋后挂起等待生产线程填充
+     *
+     * @return long
+     */
+    public long nextId() {
+        int spins = 0;
+        while (true) {
+            long current = cursor.get();
+            long available = tail.get() - current;
+            if (available > 0) {
+                // 先读再CAS：生产线程只会覆盖已经被取走的位置，CAS成功说明读到的值没有被覆盖
+                long id = slots[(int) ((current + 1) & mask)];
+                if (cursor.compareAndSet(current, current + 1)) {
+                    if (available <= paddingThreshold) {
+                        LockSupport.unpark(producer);
+                    }
+                    return id;
+                }
+            } else {
+                if (!running) {
+                    throw new IllegalStateException("CachedSequence has been closed");
+                }
+                LockSupport.unpark(producer);
+                if (spins < SPIN_TRIES) {
+                    spins++;
+                    Thread.onSpinWait();
+                } else {
+                    awaitFill();
+                }
+            }
+        }
+    }
+
+    /**
+     * 挂起当前线程直到生产线程填充槽位，借用时间达到上限时最多等待 BORROW_PARK_NANOS 后重新检查
+     */
+    private void awaitFill() {
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            // 登记之后再检查一次，避免错过登记之前生产线程发出的唤醒
+            if (tail.get() - cursor.get() <= 0 && running) {
+                LockSupport.parkNanos(this, BORROW_PARK_NANOS);
+            }
+        } finally {
+            waiters.remove(current);
+        }
+    }
+
+    /**
+     * 唤醒所有挂起的取号线程
+     */
+    private void signalWaiters() {
+        if (!waiters.isEmpty()) {
+            waiters.forEach(LockSupport::unpark);
+        }
+    }
+
+    /**
+     * 批量获取ID并填充到调用方提供的数组中
+     *
+     * @param buffer 目标数组
+     * @param offset 起始下标
+     * @param length 个数
+     */
+    public void nextIds(long[] buffer, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        for (int i = 0; i < length; i++) {
+            buffer[offset + i] = nextId();
+        }
+    }
+
+    /**
+     * @return 缓冲区中剩余的ID个数
+     */
+    public int remaining() {
+        return (int) (tail.get() - cursor.get());
+    }
+
+    /**
+     * 停止生产线程，缓冲区中剩余的ID仍然可以取走
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(producer);
+        signalWaiters();
+    }
+
+    private void produce() {
+        while (running) {
+            boolean borrowLimited = false;
+            try {
+                borrowLimited = fill();
+            } catch (Exception e) {
+                log.error("cached sequence producer failed", e);
+            }
+            LockSupport.parkNanos(this, borrowLimited ? BORROW_PARK_NANOS : IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * 填满缓冲区
+     *
+     * @return 是否因为借用时间达到上限而提前停止
+     */
+    private boolean fill() {
+        long start = tail.get() + 1;
+        long next = start;
+        while (next - cursor.get() <= slots.length) {
+            if (nextSequence > sequenceMask) {
+                // 每填完一个毫秒的整块就唤醒等待的取号线程，不必等整个缓冲区填满
+                if (next > start) {
+                    signalWaiters();
+                }
+                long now = sequence.currentOffsetTime();
+                long nextOffsetTime = Math.max(logicalOffsetTime + 1, now);
+                if (nextOffsetTime - now > maxBorrowMillis) {
+                    return true;
+                }
+                logicalOffsetTime = nextOffsetTime;
+                nextSequence = 0L;
+            }
+            slots[(int) (next & mask)] = sequence.compose(logicalOffsetTime, nextSequence++);
+            // volatile写发布槽位，取号线程读到tail之后一定能看到槽位中的值
+            tail.set(next);
+            next++;
+        }
+        if (next > start) {
+            signalWaiters();
+        }
+        return false;
+    }
+
+    /**
+     * 填充到独占缓存行的AtomicLong，避免生产游标和消费游标互相伪共享
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+
+        private long p1, p2, p3, p4, p5, p6 = 7L;
+
+        private PaddedAtomicLong(long initialValue) {
+            super(initialValue);
+        }
+    }
+}
@@ -9,20 +9,261 @@ public class LuaScriptConstant {
 
     /**
      * 获取锁
+     * <p>HASH中以持有者标识为field记录重入次数，ARGV[1]为持有者标识，ARGV[2]为过期毫秒。
+     * 传入KEYS[2]时对它INCR生成fencing token，记录在token字段，重入时返回同一个token。
+     * 返回 {0, token} 表示获取成功（不需要fencing token时token为0），{锁的剩余毫秒, 0} 表示被其他持有者占用</p>
      */
     public static final String TRY_LOCK = """
-            if(redis.call('exists', KEYS[1]) == 0) then redis.call('hset', KEYS[1], ARGV[1], '1'); redis.call('expire', KEYS[1], ARGV[2]); return 1; end;
-            if(redis.call('hexists', KEYS[1], ARGV[1]) == 1) then redis.call('hincrby', KEYS[1], ARGV[1], '1'); redis.call('expire', KEYS[1], ARGV[2]); return 1; end;
-            return 0;
+            if(redis.call('exists', KEYS[1]) == 0) then
+                local token = 0;
+                if(#KEYS > 1) then token = redis.call('incr', KEYS[2]); end;
+                redis.call('hset', KEYS[1], ARGV[1], 1, 'token', token);
+                redis.call('pexpire', KEYS[1], ARGV[2]);
+                return {0, token};
+            end;
+            if(redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+                redis.call('hincrby', KEYS[1], ARGV[1], 1);
+                redis.call('pexpire', KEYS[1], ARGV[2]);
+                return {0, tonumber(redis.call('hget', KEYS[1], 'token') or '0')};
+            end;
+            return {math.max(1, redis.call('pttl', KEYS[1])), 0};
             """;
 
     /**
      * 解锁
+     * <p>只有持有者可以解锁，ARGV[1]为持有者标识，ARGV[2]为过期毫秒，ARGV[3]为解锁通知的频道；
+     * 完全释放时向频道发布锁key并返回1，重入次数减一后仍持有返回0，不是持有者（锁已过期或被其他持有者占用）返回-1</p>
      */
-    public static final String UN_LOCK = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+    public static final String UN_LOCK = """
+            if(redis.call('hexists', KEYS[1], ARGV[1]) == 0) then return -1; end;
+            if(redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0) then redis.call('pexpire', KEYS[1], ARGV[2]); return 0; end;
+            redis.call('del', KEYS[1]);
+            redis.call('publish', ARGV[3], KEYS[1]);
+            return 1;
+            """;
+
+    /**
+     * 批量获取互斥锁
+     * <p>KEYS为排好序的锁key，ARGV同 {@link #TRY_LOCK}。先检查全部key，全部可以获取时才一起加锁；
+     * 全部获取成功返回 {0, 0}，否则返回 {被占用的锁的剩余毫秒, 被占用的key的下标（从1开始）}。批量加锁不生成fencing token</p>
+     */
+    public static final String MULTI_TRY_LOCK = """
+            for i, key in ipairs(KEYS) do
+                if(redis.call('exists', key) == 1 and redis.call('hexists', key, ARGV[1]) == 0) then
+                    return {math.max(1, redis.call('pttl', key)), i};
+                end;
+            end;
+            for _, key in ipairs(KEYS) do
+                redis.call('hincrby', key, ARGV[1], 1);
+                redis.call('pexpire', key, ARGV[2]);
+            end;
+            return {0, 0};
+            """;
+
+    /**
+     * 批量释放互斥锁
+     * <p>ARGV同 {@link #UN_LOCK}，完全释放的key逐个发布解锁通知；返回不再由ARGV[1]持有（已过期或被其他持有者占用）的key的个数</p>
+     */
+    public static final String MULTI_UN_LOCK = """
+            local lost = 0;
+            for _, key in ipairs(KEYS) do
+                if(redis.call('hexists', key, ARGV[1]) == 0) then
+                    lost = lost + 1;
+                elseif(redis.call('hincrby', key, ARGV[1], -1) > 0) then
+                    redis.call('pexpire', key, ARGV[2]);
+                else
+                    redis.call('del', key);
+                    redis.call('publish', ARGV[3], key);
+                end;
+            end;
+            return lost;
+            """;
+
+    /**
+     * 获取读锁
+     * <p>HASH KEYS[1] 中mode字段记录锁的模式，其余field为持有者标识和重入次数；ZSET KEYS[2] 记录每个读者的过期时间，
+     * 读者宕机后只有自己的读锁过期，不会被其他读者的加锁延长。ARGV同 {@link #TRY_LOCK}。
+     * 获取前先清理已过期的读者；有写者在等待（waiting字段未到期）时新的读者排在写者之后，已经持有读锁的重入不受影响。
+     * 没有写锁或者写锁由自己持有时获取成功返回 {0, 0}，否则返回 {需要等待的毫秒, 0}。读锁没有fencing token</p>
+     */
+    public static final String READ_LOCK = """
+            redis.replicate_commands();
+            local time = redis.call('TIME');
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000);
+            local expire = tonumber(ARGV[2]);
+            local mode = redis.call('hget', KEYS[1], 'mode');
+            if(mode == 'write') then
+                if(redis.call('hexists', KEYS[1], ARGV[1]) == 1) then redis.call('hincrby', KEYS[1], ARGV[1], 1); return {0, 0}; end;
+                return {math.max(1, redis.call('pttl', KEYS[1])), 0};
+            end;
+            for _, reader in ipairs(redis.call('zrangebyscore', KEYS[2], '-inf', now)) do redis.call('hdel', KEYS[1], reader); end;
+            redis.call('zremrangebyscore', KEYS[2], '-inf', now);
+            if(redis.call('hexists', KEYS[1], ARGV[1]) == 0) then
+                local waiting = tonumber(redis.call('hget', KEYS[1], 'waiting') or '0');
+                if(waiting > now) then return {waiting - now, 0}; end;
+            end;
+            redis.call('hset', KEYS[1], 'mode', 'read');
+            redis.call('hincrby', KEYS[1], ARGV[1], 1);
+            redis.call('zadd', KEYS[2], now + expire, ARGV[1]);
+            if(redis.call('pttl', KEYS[1]) < expire) then redis.call('pexpire', KEYS[1], expire); end;
+            if(redis.call('pttl', KEYS[2]) < expire) then redis.call('pexpire', KEYS[2], expire); end;
+            return {0, 0};
+            """;
+
+    /**
+     * 获取写锁
+     * <p>KEYS[1]、KEYS[2]同 {@link #READ_LOCK}，开启fencing时KEYS[3]为token计数器；ARGV[1]、ARGV[2]同 {@link #TRY_LOCK}，ARGV[3]为写者剩余的等待毫秒。
+     * 没有任何持有者或者写锁由自己持有时获取成功返回 {0, token}。仍有未过期的读者时，写者会等待的话（ARGV[3]大于0）
+     * 在waiting字段记录等待截止时间，阻止新的读者进入，返回 {最早一个读者的剩余毫秒, 0}；写者放弃等待后标记最晚在截止时间失效</p>
+     */
+    public static final String WRITE_LOCK = """
+            redis.replicate_commands();
+            local time = redis.call('TIME');
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000);
+            local mode = redis.call('hget', KEYS[1], 'mode');
+            if(mode == 'write') then
+                if(redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+                    redis.call('hincrby', KEYS[1], ARGV[1], 1);
+                    redis.call('pexpire', KEYS[1], ARGV[2]);
+                    return {0, tonumber(redis.call('hget', KEYS[1], 'token') or '0')};
+                end;
+                return {math.max(1, redis.call('pttl', KEYS[1])), 0};
+            end;
+            for _, reader in ipairs(redis.call('zrangebyscore', KEYS[2], '-inf', now)) do redis.call('hdel', KEYS[1], reader); end;
+            redis.call('zremrangebyscore', KEYS[2], '-inf', now);
+            if(redis.call('zcard', KEYS[2]) > 0) then
+                local wait = tonumber(ARGV[3]);
+                if(wait > 0) then
+                    local waiting = tonumber(redis.call('hget', KEYS[1], 'waiting') or '0');
+                    if(waiting < now + wait) then redis.call('hset', KEYS[1], 'waiting', now + wait); end;
+                    if(redis.call('pttl', KEYS[1]) < wait) then redis.call('pexpire', KEYS[1], wait); end;
+                end;
+                local earliest = redis.call('zrange', KEYS[2], 0, 0, 'WITHSCORES');
+                return {math.max(1, tonumber(earliest[2]) - now), 0};
+            end;
+            redis.call('del', KEYS[1], KEYS[2]);
+            local token = 0;
+            if(#KEYS > 2) then token = redis.call('incr', KEYS[3]); end;
+            redis.call('hset', KEYS[1], 'mode', 'write', ARGV[1], 1, 'token', token);
+            redis.call('pexpire', KEYS[1], ARGV[2]);
+            return {0, token};
+            """;
+
+    /**
+     * 释放读锁或写锁
+     * <p>KEYS同 {@link #READ_LOCK}，ARGV同 {@link #UN_LOCK}；最后一个持有者释放时删除锁、发布解锁通知并返回1，
+     * 写者等待标记未到期时保留标记，被唤醒的写者先于新的读者获取；仍有其他持有者或重入时返回0，不是持有者返回-1</p>
+     */
+    public static final String READ_WRITE_UN_LOCK = """
+            redis.replicate_commands();
+            if(redis.call('hexists', KEYS[1], ARGV[1]) == 0) then return -1; end;
+            if(redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0) then return 0; end;
+            redis.call('hdel', KEYS[1], ARGV[1]);
+            redis.call('zrem', KEYS[2], ARGV[1]);
+            if(redis.call('hget', KEYS[1], 'mode') == 'read') then
+                local time = redis.call('TIME');
+                local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000);
+                for _, reader in ipairs(redis.call('zrangebyscore', KEYS[2], '-inf', now)) do redis.call('hdel', KEYS[1], reader); end;
+                redis.call('zremrangebyscore', KEYS[2], '-inf', now);
+                if(redis.call('zcard', KEYS[2]) > 0) then return 0; end;
+            end;
+            local waiting = redis.call('hget', KEYS[1], 'waiting');
+            redis.call('del', KEYS[1], KEYS[2]);
+            if(waiting) then
+                redis.call('hset', KEYS[1], 'waiting', waiting);
+                redis.call('pexpireat', KEYS[1], waiting);
+            end;
+            redis.call('publish', ARGV[3], KEYS[1]);
+            return 1;
+            """;
+
+    /**
+     * 获取信号量的一个许可
+     * <p>ZSET中每个许可是一个member（持有者标识:唯一ID），score为许可的过期时间，持有者宕机后只丢失自己的许可。
+     * ARGV[1]为持有者标识，ARGV[2]为过期毫秒，ARGV[3]为许可数，ARGV[4]为唯一ID；获取成功返回 {0, 0}，否则返回 {最早一个许可的剩余毫秒, 0}。信号量没有fencing token</p>
+     */
+    public static final String SEMAPHORE_ACQUIRE = """
+            redis.replicate_commands()
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            redis.call('zremrangebyscore', KEYS[1], '-inf', now)
+            if(redis.call('zcard', KEYS[1]) < tonumber(ARGV[3])) then
+                redis.call('zadd', KEYS[1], now + tonumber(ARGV[2]), ARGV[1] .. ':' .. ARGV[4])
+                if(redis.call('pttl', KEYS[1]) < tonumber(ARGV[2])) then redis.call('pexpire', KEYS[1], ARGV[2]) end
+                return {0, 0}
+            end
+            local earliest = redis.call('zrange', KEYS[1], 0, 0, 'WITHSCORES')
+            return {math.max(1, tonumber(earliest[2]) - now), 0}
+            """;
+
+    /**
+     * 释放信号量的一个许可
+     * <p>ARGV同 {@link #UN_LOCK}；释放成功时发布通知并返回1，没有持有许可返回-1</p>
+     */
+    public static final String SEMAPHORE_RELEASE = """
+            local prefix = ARGV[1] .. ':'
+            for _, member in ipairs(redis.call('zrange', KEYS[1], 0, -1)) do
+                if(string.sub(member, 1, #prefix) == prefix) then
+                    redis.call('zrem', KEYS[1], member)
+                    redis.call('publish', ARGV[3], KEYS[1])
+                    return 1
+                end
+            end
+            return -1
+            """;
+
+    /**
+     * 信号量续期
+     * <p>把ARGV[1]持有的未过期许可的过期时间重置为ARGV[2]毫秒之后，续期成功返回1，没有持有许可返回0</p>
+     */
+    public static final String SEMAPHORE_RENEW = """
+            redis.replicate_commands()
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local prefix = ARGV[1] .. ':'
+            local renewed = 0
+            for _, member in ipairs(redis.call('zrangebyscore', KEYS[1], '(' .. now, '+inf')) do
+                if(string.sub(member, 1, #prefix) == prefix) then
+                    redis.call('zadd', KEYS[1], now + tonumber(ARGV[2]), member)
+                    renewed = 1
+                end
+            end
+            if(renewed == 1 and redis.call('pttl', KEYS[1]) < tonumber(ARGV[2])) then redis.call('pexpire', KEYS[1], ARGV[2]) end
+            return renewed
+            """;
+
+    /**
+     * 锁续期
+     * <p>互斥锁、读写锁的续期，只在仍由ARGV[1]持有时重置过期时间为ARGV[2]毫秒，续期成功返回1，锁已过期或被其他持有者占用返回0</p>
+     */
+    public static final String RENEW_LOCK = """
+            if(redis.call('hexists', KEYS[1], ARGV[1]) == 1) then redis.call('pexpire', KEYS[1], ARGV[2]); return 1; end;
+            return 0;
+            """;
+
+    /**
+     * 读锁续期
+     * <p>KEYS同 {@link #READ_LOCK}，ARGV同 {@link #RENEW_LOCK}。只续期ARGV[1]自己的过期时间，锁和读者集合的过期时间只延长不缩短；
+     * 读者已经过期（等待被清理）时不再复活，返回0；写者重入持有的读锁按写锁续期</p>
+     */
+    public static final String RENEW_READ_LOCK = """
+            redis.replicate_commands();
+            if(redis.call('hexists', KEYS[1], ARGV[1]) == 0) then return 0; end;
+            local expire = tonumber(ARGV[2]);
+            if(redis.call('hget', KEYS[1], 'mode') == 'write') then redis.call('pexpire', KEYS[1], expire); return 1; end;
+            local time = redis.call('TIME');
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000);
+            local deadline = redis.call('zscore', KEYS[2], ARGV[1]);
+            if((not deadline) or tonumber(deadline) < now) then return 0; end;
+            redis.call('zadd', KEYS[2], now + expire, ARGV[1]);
+            if(redis.call('pttl', KEYS[1]) < expire) then redis.call('pexpire', KEYS[1], expire); end;
+            if(redis.call('pttl', KEYS[2]) < expire) then redis.call('pexpire', KEYS[2], expire); end;
+            return 1;
+            """;
 
     /**
      * lua限流
+     * <p>放行返回0，被限流返回至少还要被限流多少毫秒（窗口剩余时间），调用方在这段时间内可以直接在本地拒绝</p>
      */
     public static final String RATE_LIMITER = """
             local methodKey = KEYS[1]
@@ -30,12 +271,268 @@ public class LuaScriptConstant {
             local timeout = tonumber(ARGV[2])
             local count = tonumber(redis.call("GET", methodKey) or "0")
             if count + 1 > limit then
-                return false
+                return math.max(1, redis.call("PTTL", methodKey))
             else
-                redis.call("INCRBY", methodKey, 1)
+                -- 只在窗口的第一次请求时设置过期时间，否则持续的流量会让窗口永远不过期
+                if redis.call("INCRBY", methodKey, 1) == 1 then
+                    redis.call("PEXPIRE", methodKey, timeout)
+                end
+                return 0
+            end
+            """;
+
+    /**
+     * lua限流，固定窗口的令牌预取
+     * <p>一次预扣最多ARGV[3]个令牌，返回 {实际预扣的令牌数, 窗口剩余毫秒}</p>
+     */
+    public static final String RATE_LIMITER_LEASE = """
+            local methodKey = KEYS[1]
+            local limit = tonumber(ARGV[1])
+            local timeout = tonumber(ARGV[2])
+            local batch = tonumber(ARGV[3])
+            local count = tonumber(redis.call("GET", methodKey) or "0")
+            local granted = math.min(batch, limit - count)
+            if granted <= 0 then
+                return {0, redis.call("PTTL", methodKey)}
+            end
+            if redis.call("INCRBY", methodKey, granted) == granted then
                 redis.call("PEXPIRE", methodKey, timeout)
-                return true
             end
+            return {granted, redis.call("PTTL", methodKey)}
+            """;
+
+    /**
+     * lua限流，滑动日志算法
+     * <p>ZSET中以请求时间为score记录窗口内的每一次请求，时间取Redis服务端时间，避免多节点时钟不一致</p>
+     * <p>放行返回0，被限流返回等到足够多的旧请求滑出窗口所需的毫秒</p>
+     */
+    public static final String SLIDING_LOG_RATE_LIMITER = """
+            redis.replicate_commands()
+            local methodKey = KEYS[1]
+            local limit = tonumber(ARGV[1])
+            local timeout = tonumber(ARGV[2])
+            local member = ARGV[3]
+            local time = redis.call("TIME")
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            redis.call("ZREMRANGEBYSCORE", methodKey, 0, now - timeout)
+            local count = redis.call("ZCARD", methodKey)
+            if count >= limit then
+                if limit <= 0 then
+                    return timeout
+                end
+                -- 第 count - limit + 1 旧的请求滑出窗口后，窗口内的请求数才会小于limit
+                local oldest = redis.call("ZRANGE", methodKey, count - limit, count - limit, "WITHSCORES")
+                return math.max(1, tonumber(oldest[2]) + timeout - now)
+            end
+            redis.call("ZADD", methodKey, now, member)
+            redis.call("PEXPIRE", methodKey, timeout)
+            return 0
+            """;
+
+    /**
+     * lua限流，滑动窗口计数算法
+     * <p>HASH中按窗口序号记录计数，估算值 = 上一窗口计数 * 上一窗口在滑动窗口内的占比 + 当前窗口计数</p>
+     * <p>放行返回0，被限流返回估算值降到limit以下所需的毫秒，向下取整，不会多拒绝</p>
+     */
+    public static final String SLIDING_WINDOW_RATE_LIMITER = """
+            redis.replicate_commands()
+            local methodKey = KEYS[1]
+            local limit = tonumber(ARGV[1])
+            local timeout = tonumber(ARGV[2])
+            local time = redis.call("TIME")
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local current = math.floor(now / timeout)
+            local weight = 1 - (now % timeout) / timeout
+            local currentCount = tonumber(redis.call("HGET", methodKey, current) or "0")
+            local previousCount = tonumber(redis.call("HGET", methodKey, current - 1) or "0")
+            if previousCount * weight + currentCount + 1 > limit then
+                if limit <= 0 then
+                    return timeout
+                end
+                local elapsed = now % timeout
+                local retryAfter
+                if currentCount + 1 > limit then
+                    -- 当前窗口已满，要等到下一个窗口中当前窗口的占比足够小
+                    retryAfter = timeout - elapsed + timeout * (1 - (limit - 1) / currentCount)
+                else
+                    retryAfter = timeout * (1 - (limit - 1 - currentCount) / previousCount) - elapsed
+                end
+                return math.max(1, math.floor(retryAfter))
+            end
+            redis.call("HINCRBY", methodKey, current, 1)
+            redis.call("HDEL", methodKey, current - 2)
+            redis.call("PEXPIRE", methodKey, timeout * 2)
+            return 0
+            """;
+
+    /**
+     * lua限流，令牌桶算法
+     * <p>不依赖定时任务补充令牌，而是在每次请求时根据Redis服务端时间与上次请求的间隔惰性计算补充量</p>
+     * <p>放行返回0，被限流返回攒够一个令牌所需的毫秒</p>
+     */
+    public static final String TOKEN_BUCKET_RATE_LIMITER = """
+            redis.replicate_commands()
+            local bucketKey = KEYS[1]
+            local capacity = tonumber(ARGV[1])
+            local refillPerSecond = tonumber(ARGV[2])
+            local time = redis.call("TIME")
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local bucket = redis.call("HMGET", bucketKey, "tokens", "timestamp")
+            local tokens = tonumber(bucket[1])
+            local timestamp = tonumber(bucket[2])
+            if tokens == nil or timestamp == nil then
+                tokens = capacity
+                timestamp = now
+            end
+            tokens = math.min(capacity, tokens + math.max(0, now - timestamp) * refillPerSecond / 1000)
+            local retryAfter = 0
+            if tokens >= 1 then
+                tokens = tokens - 1
+            else
+                retryAfter = math.max(1, math.floor((1 - tokens) * 1000 / refillPerSecond))
+            end
+            redis.call("HMSET", bucketKey, "tokens", tokens, "timestamp", now)
+            -- 桶从空到满所需的时间之后，状态与一个新桶等价，可以直接过期
+            redis.call("PEXPIRE", bucketKey, math.ceil(capacity * 1000 / refillPerSecond))
+            return retryAfter
+            """;
+
+    /**
+     * lua限流，多个key在一次调用中原子地判断
+     * <p>
+     * ARGV[1]为滑动日志使用的唯一member，之后每个key依次占用5个参数：算法、limit、窗口毫秒、令牌桶容量、令牌桶每秒补充数。
+     * 先检查全部key，全部放行时才统一计数；返回 {第一个被限流的key的下标（从1开始）, 该key还要被限流的毫秒}，全部放行返回 {0, 0}
+     * </p>
+     */
+    public static final String MULTI_RATE_LIMITER = """
+            redis.replicate_commands()
+            local time = redis.call("TIME")
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local member = ARGV[1]
+            local states = {}
+            for i, key in ipairs(KEYS) do
+                local base = 1 + (i - 1) * 5
+                local state = {algorithm = ARGV[base + 1], limit = tonumber(ARGV[base + 2]), timeout = tonumber(ARGV[base + 3])}
+                local limit = state.limit
+                local timeout = state.timeout
+                local retryAfter = 0
+                if state.algorithm == "FIXED_WINDOW" then
+                    if tonumber(redis.call("GET", key) or "0") + 1 > limit then
+                        retryAfter = math.max(1, redis.call("PTTL", key))
+                    end
+                elseif state.algorithm == "SLIDING_LOG" then
+                    redis.call("ZREMRANGEBYSCORE", key, 0, now - timeout)
+                    local count = redis.call("ZCARD", key)
+                    if count >= limit then
+                        if limit <= 0 then
+                            retryAfter = timeout
+                        else
+                            local oldest = redis.call("ZRANGE", key, count - limit, count - limit, "WITHSCORES")
+                            retryAfter = math.max(1, tonumber(oldest[2]) + timeout - now)
+                        end
+                    end
+                elseif state.algorithm == "SLIDING_WINDOW" then
+                    state.current = math.floor(now / timeout)
+                    local elapsed = now % timeout
+                    local currentCount = tonumber(redis.call("HGET", key, state.current) or "0")
+                    local previousCount = tonumber(redis.call("HGET", key, state.current - 1) or "0")
+                    if previousCount * (1 - elapsed / timeout) + currentCount + 1 > limit then
+                        if limit <= 0 then
+                            retryAfter = timeout
+                        elseif currentCount + 1 > limit then
+                            retryAfter = math.max(1, math.floor(timeout - elapsed + timeout * (1 - (limit - 1) / currentCount)))
+                        else
+                            retryAfter = math.max(1, math.floor(timeout * (1 - (limit - 1 - currentCount) / previousCount) - elapsed))
+                        end
+                    end
+                else
+                    local capacity = tonumber(ARGV[base + 4])
+                    local refillPerSecond = tonumber(ARGV[base + 5])
+                    local bucket = redis.call("HMGET", key, "tokens", "timestamp")
+                    local tokens = tonumber(bucket[1])
+                    local timestamp = tonumber(bucket[2])
+                    if tokens == nil or timestamp == nil then
+                        tokens = capacity
+                        timestamp = now
+                    end
+                    state.tokens = math.min(capacity, tokens + math.max(0, now - timestamp) * refillPerSecond / 1000)
+                    state.expire = math.ceil(capacity * 1000 / refillPerSecond)
+                    if state.tokens < 1 then
+                        retryAfter = math.max(1, math.floor((1 - state.tokens) * 1000 / refillPerSecond))
+                    end
+                end
+                if retryAfter > 0 then
+                    return {i, retryAfter}
+                end
+                states[i] = state
+            end
+            for i, key in ipairs(KEYS) do
+                local state = states[i]
+                if state.algorithm == "FIXED_WINDOW" then
+                    if redis.call("INCRBY", key, 1) == 1 then
+                        redis.call("PEXPIRE", key, state.timeout)
+                    end
+                elseif state.algorithm == "SLIDING_LOG" then
+                    redis.call("ZADD", key, now, member)
+                    redis.call("PEXPIRE", key, state.timeout)
+                elseif state.algorithm == "SLIDING_WINDOW" then
+                    redis.call("HINCRBY", key, state.current, 1)
+                    redis.call("HDEL", key, state.current - 2)
+                    redis.call("PEXPIRE", key, state.timeout * 2)
+                else
+                    redis.call("HMSET", key, "tokens", state.tokens - 1, "timestamp", now)
+                    redis.call("PEXPIRE", key, state.expire)
+                end
+            end
+            return {0, 0}
+            """;
+
+    /**
+     * 租用机器号
+     * <p>KEYS[1]为租约HASH，field为机器号，value为 持有者:到期时间戳；ARGV[1]持有者，ARGV[2]租期毫秒，ARGV[3]最大机器号，ARGV[4]开始查找的机器号。
+     * 从ARGV[4]开始依次查找没有租约或租约已到期的机器号，返回租到的机器号，全部被占用时返回-1。到期时间使用Redis服务器时间，不受各节点时钟偏差影响</p>
+     */
+    public static final String ALLOCATE_WORKER_ID = """
+            redis.replicate_commands();
+            local time = redis.call('TIME');
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000);
+            local max = tonumber(ARGV[3]);
+            for i = 0, max do
+                local id = (tonumber(ARGV[4]) + i) % (max + 1);
+                local lease = redis.call('hget', KEYS[1], id);
+                if (not lease) or tonumber(string.match(lease, ':(%d+)$')) < now then
+                    redis.call('hset', KEYS[1], id, ARGV[1] .. ':' .. (now + tonumber(ARGV[2])));
+                    return id;
+                end;
+            end;
+            return -1;
+            """;
+
+    /**
+     * 续租机器号
+     * <p>ARGV[1]持有者，ARGV[2]租期毫秒，ARGV[3]机器号。租约属于自己，或者已到期且没有被其他节点租走时续租并返回1；被其他节点租走返回0</p>
+     */
+    public static final String RENEW_WORKER_ID = """
+            redis.replicate_commands();
+            local time = redis.call('TIME');
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000);
+            local lease = redis.call('hget', KEYS[1], ARGV[3]);
+            if lease and string.match(lease, '^(.*):%d+$') ~= ARGV[1] and tonumber(string.match(lease, ':(%d+)$')) >= now then
+                return 0;
+            end;
+            redis.call('hset', KEYS[1], ARGV[3], ARGV[1] .. ':' .. (now + tonumber(ARGV[2])));
+            return 1;
+            """;
+
+    /**
+     * 归还机器号，ARGV[1]持有者，ARGV[2]机器号，只删除自己的租约
+     */
+    public static final String RELEASE_WORKER_ID = """
+            local lease = redis.call('hget', KEYS[1], ARGV[2]);
+            if lease and string.match(lease, '^(.*):%d+$') == ARGV[1] then
+                return redis.call('hdel', KEYS[1], ARGV[2]);
+            end;
+            return 0;
             """;
 
 }
@@ -7,7 +7,9 @@ import org.apache.commons.lang3.StringUtils;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
+import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 基于Twitter的Snowflake算法实现分布式高效有序ID生产黑科技(sequence)——升级版Snowflake
@@ -20,7 +22,7 @@ import java.util.concurrent.ThreadLocalRandom;
  * 1位标识，由于long基本类型在Java中是带符号的，最高位是符号位，正数是0，负数是1，所以id一般是正数，最高位是0<br>
  * <br>
  * 41位时间截(毫秒级)，注意，41位时间截不是存储当前时间的时间截，而是存储时间截的差值（当前时间截 - 开始时间截)
- * 得到的值），这里的的开始时间截，一般是我们的id生成器开始使用的时间，由我们程序来指定的（如下START_TIME属性）。41位的时间截，可以使用69年，年T = (1L << 41) / (1000L * 60 * 60 * 24 * 365) = 69<br>
+ * 得到的值），这里的的开始时间截，一般是我们的id生成器开始使用的时间，由我们程序来指定的（见 {@link SequenceLayout#startTime()}）。41位的时间截，可以使用69年，年T = (1L << 41) / (1000L * 60 * 60 * 24 * 365) = 69<br>
  * <br>
  * 10位的数据机器位，可以部署在1024个节点，包括5位dataCenterId和5位workerId<br>
  * <br>
@@ -36,7 +38,9 @@ import java.util.concurrent.ThreadLocalRandom;
  * 2.解决跨毫秒起始值每次为0开始的情况（避免末尾必定为偶数，而不便于取余使用问题）<p>
  * 3.解决高并发场景中获取时间戳性能问题<p>
  * 4.支撑根据IP末尾数据作为workerId
- * 5.时间回拨方案思考：1024个节点中分配10个点作为时间回拨序号（连续10次时间回拨的概率较小）
+ * 5.时间回拨方案思考：1024个节点中分配10个点作为时间回拨序号（连续10次时间回拨的概率较小）<p>
+ * 6.无锁：上一次的时间戳和毫秒内序列打包在一个 {@link AtomicLong} 中通过CAS推进，多线程取号不在同一个监视器上排队<p>
+ * 7.位布局可配置（{@link SequenceLayout}），默认为41位时间戳、2位dataCenterId、8位workerId、12位序列，ID可以按布局解析出时间、节点和序列
  *
  * @author lry
  * @version 3.0
@@ -44,12 +48,6 @@ import java.util.concurrent.ThreadLocalRandom;
 @Slf4j
 public final class Sequence {
 
-    /**
-     * 起始时间戳 (2018-02-27 17:19:37.809)
-     * 此时间戳用于计算时间偏移量，确保生成的ID按时间递增
-     **/
-    private static final long START_TIME = 1519740777809L;
-
     /**
      * IP地址最后一个字节掩码（0xFF = 255）
      **/
@@ -66,50 +64,39 @@ public final class Sequence {
     private static final long MAC_LAST_BYTE_MASK = 0x0000FF00;
 
     /**
-     * dataCenterId占用的位数：2
+     * 默认布局下节点号（dataCenterId和workerId合在一起）可以使用范围：0-1023
      **/
-    private final static long DATA_CENTER_ID_BITS = 2L;
-    /**
-     * workerId占用的位数：8
-     **/
-    private final static long WORKER_ID_BITS = 8L;
-    /**
-     * 序列号占用的位数：12（表示只允许workId的范围为：0-4095）
-     **/
-    private final static long SEQUENCE_BITS = 12L;
-
+    public final static long MAX_NODE_ID = SequenceLayout.DEFAULT.maxNodeId();
+    private static final byte LAST_IP = getLastIpAddressInternal();
+    private final SequenceLayout layout;
+    private final long workerId;
+    private final long dataCenterId;
     /**
-     * workerId可以使用范围：0-255
+     * 以下字段由布局预先计算，取号时不再重复计算
      **/
-    private final static long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
+    private final long startTime;
+    private final int sequenceBits;
+    private final long sequenceMask;
+    private final int timestampShift;
+    private final long maxTimestamp;
     /**
-     * dataCenterId可以使用范围：0-3
+     * dataCenterId和workerId移位后合在一起的部分
      **/
-    private final static long MAX_DATA_CENTER_ID = ~(-1L << DATA_CENTER_ID_BITS);
-
-
-    private final static long WORKER_ID_SHIFT = SEQUENCE_BITS;
-    private final static long DATA_CENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
-    private final static long TIMESTAMP_LEFT_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATA_CENTER_ID_BITS;
-
+    private final long nodeBits;
     /**
-     * 用mask防止溢出:位与运算保证计算的结果范围始终是 0-4095
+     * 上一次发号的状态：高位为相对startTime的时间戳，低sequenceBits位为毫秒内序列，初始值保证第一次取号进入新的毫秒
      **/
-    private final static long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
-    private static final byte LAST_IP = getLastIpAddressInternal();
-    private final long workerId;
-    private final long dataCenterId;
-    private final ThreadLocalRandom tlr = ThreadLocalRandom.current();
-    private long sequence = 0L;
-    private long lastTimestamp = -1L;
+    private final AtomicLong state;
     private final boolean clock;
     private long timeOffset;
     private boolean randomSequence;
 
     public Sequence() {
-        this.dataCenterId = getDatacenterId();
-        this.workerId = getMaxWorkerId(dataCenterId);
-        this.clock = true;
+        this(SequenceLayout.DEFAULT, getDatacenterId(SequenceLayout.DEFAULT.maxDataCenterId()), true, 0L, false);
+    }
+
+    private Sequence(SequenceLayout layout, long dataCenterId, boolean clock, long timeOffset, boolean randomSequence) {
+        this(layout, dataCenterId, getMaxWorkerId(dataCenterId, layout.maxWorkerId()), clock, timeOffset, randomSequence);
     }
 
     public Sequence(long dataCenterId) {
@@ -130,18 +117,79 @@ public final class Sequence {
      * @param randomSequence true表示使用毫秒内的随机序列(超过范围则取余)
      */
     public Sequence(long dataCenterId, long workerId, boolean clock, long timeOffset, boolean randomSequence) {
-        if (dataCenterId > MAX_DATA_CENTER_ID || dataCenterId < 0) {
-            throw new IllegalArgumentException("Data Center Id can't be greater than " + MAX_DATA_CENTER_ID + " or less than 0");
+        this(SequenceLayout.DEFAULT, dataCenterId, workerId, clock, timeOffset, randomSequence);
+    }
+
+    /**
+     * 按指定的位布局创建分布式ID生成器
+     *
+     * @param layout         位布局
+     * @param dataCenterId   数据中心ID,数据范围为0~layout.maxDataCenterId()
+     * @param workerId       工作机器ID,数据范围为0~layout.maxWorkerId()
+     * @param clock          true表示解决高并发下获取时间戳的性能问题
+     * @param timeOffset     允许时间回拨的毫秒量,建议5ms
+     * @param randomSequence true表示使用毫秒内的随机序列起始值
+     */
+    public Sequence(SequenceLayout layout, long dataCenterId, long workerId, boolean clock, long timeOffset, boolean randomSequence) {
+        if (dataCenterId > layout.maxDataCenterId() || dataCenterId < 0) {
+            throw new IllegalArgumentException("Data Center Id can't be greater than " + layout.maxDataCenterId() + " or less than 0");
         }
-        if (workerId > MAX_WORKER_ID || workerId < 0) {
-            throw new IllegalArgumentException("Worker Id can't be greater than " + MAX_WORKER_ID + " or less than 0");
+        if (workerId > layout.maxWorkerId() || workerId < 0) {
+            throw new IllegalArgumentException("Worker Id can't be greater than " + layout.maxWorkerId() + " or less than 0");
         }
 
+        this.layout = layout;
         this.workerId = workerId;
         this.dataCenterId = dataCenterId;
         this.clock = clock;
         this.timeOffset = timeOffset;
         this.randomSequence = randomSequence;
+        this.startTime = layout.startTime();
+        this.sequenceBits = layout.sequenceBits();
+        this.sequenceMask = layout.sequenceMask();
+        this.timestampShift = layout.timestampShift();
+        this.maxTimestamp = layout.maxTimestamp();
+        this.nodeBits = (dataCenterId << layout.dataCenterIdShift()) | (workerId << layout.workerIdShift());
+        this.state = new AtomicLong(-1L << sequenceBits);
+    }
+
+    /**
+     * 按节点号创建ID生成器，节点号的高位作为dataCenterId、低位作为workerId，
+     * 用于由 WorkerIdAllocator 分配集群内唯一节点号的场景
+     *
+     * @param nodeId 节点号,数据范围为0~1023
+     * @return ID生成器
+     */
+    public static Sequence ofNodeId(long nodeId) {
+        return ofNodeId(SequenceLayout.DEFAULT, nodeId);
+    }
+
+    /**
+     * 按指定布局和节点号创建ID生成器
+     *
+     * @param layout 位布局
+     * @param nodeId 节点号,数据范围为0~layout.maxNodeId()
+     * @return ID生成器
+     */
+    public static Sequence ofNodeId(SequenceLayout layout, long nodeId) {
+        if (nodeId > layout.maxNodeId() || nodeId < 0) {
+            throw new IllegalArgumentException("Node Id can't be greater than " + layout.maxNodeId() + " or less than 0");
+        }
+        return new Sequence(layout, nodeId >> layout.workerIdBits(), nodeId & layout.maxWorkerId(), true, 5L, false);
+    }
+
+    /**
+     * @return 节点号，dataCenterId为高位、workerId为低位，与 {@link #ofNodeId(SequenceLayout, long)} 的参数对应
+     */
+    public long nodeId() {
+        return (dataCenterId << layout.workerIdBits()) | workerId;
+    }
+
+    /**
+     * @return ID的位布局，用于解析ID
+     */
+    public SequenceLayout layout() {
+        return layout;
     }
 
     /**
@@ -171,7 +219,7 @@ public final class Sequence {
         }
     }
 
-    private static long getMaxWorkerId(long datacenterId) {
+    private static long getMaxWorkerId(long datacenterId, long maxWorkerId) {
         StringBuilder mpid = new StringBuilder();
         mpid.append(datacenterId);
         String name = ManagementFactory.getRuntimeMXBean().getName();
@@ -184,10 +232,10 @@ public final class Sequence {
         /*
          * MAC + PID 的 hashcode 获取16个低位
          */
-        return (mpid.toString().hashCode() & 0xffff) % (Sequence.MAX_WORKER_ID + 1);
+        return (mpid.toString().hashCode() & 0xffff) % (maxWorkerId + 1);
     }
 
-    private static long getDatacenterId() {
+    private static long getDatacenterId(long maxDataCenterId) {
         long id = 0L;
         try {
             InetAddress ip = InetAddress.getLocalHost();
@@ -198,7 +246,7 @@ public final class Sequence {
                 byte[] mac = network.getHardwareAddress();
                 if (null != mac) {
                     id = ((MAC_SECOND_LAST_BYTE_MASK & (long) mac[mac.length - 2]) | (MAC_LAST_BYTE_MASK & (((long) mac[mac.length - 1]) << 8))) >> 6;
-                    id = id % (Sequence.MAX_DATA_CENTER_ID + 1);
+                    id = id % (maxDataCenterId + 1);
                 }
             }
         } catch (Exception e) {
@@ -209,71 +257,142 @@ public final class Sequence {
 
     /**
      * 获取ID
+     * <p>
+     * 无锁实现：读取上一次的时间戳和序列，算出下一个状态后CAS写回，CAS失败说明被其他线程抢先，重新计算。
+     * 同一毫秒内的序列用完时自旋到下一毫秒。
+     * </p>
      *
      * @return long
      */
-    public synchronized Long nextId() {
-        long currentTimestamp = this.timeGen();
-
-        // 闰秒：如果当前时间小于上一次ID生成的时间戳，说明系统时钟回退过，这个时候应当抛出异常
-        if (currentTimestamp < lastTimestamp) {
-            // 校验时间偏移回拨量
-            long offset = lastTimestamp - currentTimestamp;
-            if (offset > timeOffset) {
-                throw new RuntimeException("Clock moved backwards, refusing to generate id for [" + offset + "ms]");
-            }
+    public long nextId() {
+        return reserve(1);
+    }
 
-            try {
-                // 时间回退timeOffset毫秒内，则允许等待2倍的偏移量后重新获取，解决小范围的时间回拨问题
-                // 【强制】使用Thread.sleep()替代wait()，避免在synchronized方法中的不当使用
-                Thread.sleep(offset << 1);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
-            }
-            // 再次获取
-            currentTimestamp = this.timeGen();
-            // 再次校验
-            if (currentTimestamp < lastTimestamp) {
-                throw new RuntimeException("Clock moved backwards, refusing to generate id for [" + offset + "ms]");
+    /**
+     * 批量获取ID
+     *
+     * @param n 个数
+     * @return 递增的ID
+     */
+    public long[] nextIds(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n can't be less than 0");
+        }
+        long[] ids = new long[n];
+        nextIds(ids, 0, n);
+        return ids;
+    }
+
+    /**
+     * 批量获取ID并填充到调用方提供的数组中
+     * <p>
+     * 每次CAS预留当前毫秒剩余序列中的一段连续区间，一个毫秒内最多一次CAS，不逐个取号
+     * </p>
+     *
+     * @param buffer 目标数组
+     * @param offset 起始下标
+     * @param length 个数
+     */
+    public void nextIds(long[] buffer, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        int filled = 0;
+        while (filled < length) {
+            int max = length - filled;
+            long first = reserve(max);
+            // 与reserve中预留的个数相同：不超过max，也不超过本毫秒剩余的序列
+            int count = (int) Math.min(max, sequenceMask - (first & sequenceMask) + 1);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + filled + i] = first + i;
             }
+            filled += count;
         }
+    }
 
-        // 同一毫秒内序列直接自增
-        if (lastTimestamp == currentTimestamp) {
-            // randomSequence为true表示随机生成允许范围内的序列起始值并取余数,否则毫秒内起始值为0L开始自增
-            long tempSequence = sequence + 1;
-            if (randomSequence && tempSequence > SEQUENCE_MASK) {
-                tempSequence = tempSequence % SEQUENCE_MASK;
+    /**
+     * 预留当前毫秒中一段连续的序列
+     *
+     * @param max 最多预留的个数，大于0
+     * @return 第一个ID，预留的个数为 min(max, sequenceMask - 第一个ID的序列 + 1)，同一段的ID依次加一
+     */
+    private long reserve(int max) {
+        while (true) {
+            long current = state.get();
+            long lastOffsetTime = current >> sequenceBits;
+            long currentOffsetTime = this.timeGen() - startTime;
+
+            // 闰秒：如果当前时间小于上一次ID生成的时间戳，说明系统时钟回退过
+            if (currentOffsetTime < lastOffsetTime) {
+                waitForClockBackwards(lastOffsetTime - currentOffsetTime);
+                continue;
             }
 
-            // 通过位与运算保证计算的结果范围始终是 0-4095
-            sequence = tempSequence & SEQUENCE_MASK;
-            if (sequence == 0) {
-                currentTimestamp = this.tilNextMillis(lastTimestamp);
+            long first;
+            if (currentOffsetTime == lastOffsetTime) {
+                // 同一毫秒内序列直接自增
+                first = (current & sequenceMask) + 1;
+                if (first > sequenceMask) {
+                    // 本毫秒的序列已用完，等到下一毫秒重新计算
+                    this.tilNextMillis(lastOffsetTime + startTime);
+                    continue;
+                }
+            } else {
+                // randomSequence为true表示随机生成允许范围内的序列起始值,否则毫秒内起始值为0L开始自增
+                first = randomSequence ? ThreadLocalRandom.current().nextLong(sequenceMask + 1) : 0L;
+            }
+            if (currentOffsetTime > maxTimestamp) {
+                throw new IllegalStateException("Timestamp bits of the layout are exhausted since " + (startTime + maxTimestamp));
+            }
+            long last = Math.min(first + max - 1, sequenceMask);
+            if (state.compareAndSet(current, (currentOffsetTime << sequenceBits) | last)) {
+                return compose(currentOffsetTime, first);
             }
-        } else {
-            // randomSequence为true表示随机生成允许范围内的序列起始值,否则毫秒内起始值为0L开始自增
-            sequence = randomSequence ? tlr.nextLong(SEQUENCE_MASK + 1) : 0L;
         }
+    }
 
-        lastTimestamp = currentTimestamp;
-        long currentOffsetTime = currentTimestamp - START_TIME;
+    /**
+     * @return 上一次发号的时间戳（相对起始时间），还没有发号时为-1
+     */
+    long lastOffsetTime() {
+        return state.get() >> sequenceBits;
+    }
 
-        /*
-         * 1.左移运算是为了将数值移动到对应的段(41、5、5，12那段因为本来就在最右，因此不用左移)
-         * 2.然后对每个左移后的值(la、lb、lc、sequence)做位或运算，是为了把各个短的数据合并起来，合并成一个二进制数
-         * 3.最后转换成10进制，就是最终生成的id
-         */
-        return (currentOffsetTime << TIMESTAMP_LEFT_SHIFT) |
-                // 数据中心位
-                (dataCenterId << DATA_CENTER_ID_SHIFT) |
-                // 工作ID位
-                (workerId << WORKER_ID_SHIFT) |
+    /**
+     * @return 获得相对起始时间的当前毫秒时间戳
+     */
+    long currentOffsetTime() {
+        return this.timeGen() - startTime;
+    }
+
+    /**
+     * 1.左移运算是为了将数值移动到对应的段(默认布局为41、2、8，序列那段因为本来就在最右，因此不用左移)
+     * 2.然后对每个左移后的值做位或运算，是为了把各个短的数据合并起来，合并成一个二进制数
+     * 3.最后转换成10进制，就是最终生成的id
+     */
+    long compose(long offsetTime, long sequence) {
+        return (offsetTime << timestampShift) |
+                // 数据中心位和工作ID位
+                nodeBits |
                 // 毫秒序列化位
                 sequence;
     }
 
+    /**
+     * 时间回退timeOffset毫秒内，则等待2倍的偏移量后由调用方重新获取，解决小范围的时间回拨问题；超过timeOffset直接拒绝
+     *
+     * @param offset 回拨的毫秒数
+     */
+    private void waitForClockBackwards(long offset) {
+        if (offset > timeOffset) {
+            throw new RuntimeException("Clock moved backwards, refusing to generate id for [" + offset + "ms]");
+        }
+        try {
+            Thread.sleep(offset << 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * 保证返回的毫秒数在参数之后(阻塞到下一个毫秒，直到获得新的时间戳)——CAS
      *
@@ -284,6 +403,7 @@ public final class Sequence {
         long timestamp = this.timeGen();
         while (timestamp <= lastTimestamp) {
             // 如果发现时间回拨，则自动重新获取（可能会处于无限循环中）
+            Thread.onSpinWait();
             timestamp = this.timeGen();
         }
 
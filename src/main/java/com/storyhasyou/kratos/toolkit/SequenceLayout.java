@@ -0,0 +1,153 @@
+package com.storyhasyou.kratos.toolkit;
+
+/**
+ * {@link Sequence} 生成的ID的位布局：符号位 - 时间戳 - dataCenterId - workerId - 毫秒内序列
+ * <p>
+ * 时间戳占用剩余的 63 - dataCenterIdBits - workerIdBits - sequenceBits 位，可以使用 2^timestampBits 毫秒。
+ * 吞吐高的节点增加sequenceBits，节点多的集群增加workerIdBits，同一个集群内必须使用相同的布局。
+ * 解析方法只做位运算，不分配对象，可以直接按ID分片、按时间范围扫描。
+ * </p>
+ *
+ * @param startTime        起始时间戳，毫秒
+ * @param dataCenterIdBits dataCenterId占用的位数
+ * @param workerIdBits     workerId占用的位数
+ * @param sequenceBits     毫秒内序列占用的位数
+ * @author fangxi
+ */
+public record SequenceLayout(long startTime, int dataCenterIdBits, int workerIdBits, int sequenceBits) {
+
+    /**
+     * 默认布局：起始时间 2018-02-27 17:19:37.809，41位时间戳、2位dataCenterId、8位workerId、12位序列
+     */
+    public static final SequenceLayout DEFAULT = new SequenceLayout(1519740777809L, 2, 8, 12);
+
+    /**
+     * 时间戳至少占用的位数，约49天
+     */
+    private static final int MIN_TIMESTAMP_BITS = 32;
+
+    public SequenceLayout {
+        if (startTime < 0) {
+            throw new IllegalArgumentException("Start time can't be less than 0");
+        }
+        if (dataCenterIdBits < 0 || workerIdBits < 0 || sequenceBits < 1) {
+            throw new IllegalArgumentException("Data center id bits and worker id bits can't be less than 0, sequence bits can't be less than 1");
+        }
+        if (63 - dataCenterIdBits - workerIdBits - sequenceBits < MIN_TIMESTAMP_BITS) {
+            throw new IllegalArgumentException("Timestamp needs at least " + MIN_TIMESTAMP_BITS + " bits");
+        }
+    }
+
+    /**
+     * @return 时间戳占用的位数
+     */
+    public int timestampBits() {
+        return 63 - dataCenterIdBits - workerIdBits - sequenceBits;
+    }
+
+    /**
+     * @return 相对startTime的最大时间戳，超过后无法再生成ID
+     */
+    public long maxTimestamp() {
+        return ~(-1L << timestampBits());
+    }
+
+    /**
+     * @return dataCenterId可以使用的最大值
+     */
+    public long maxDataCenterId() {
+        return ~(-1L << dataCenterIdBits);
+    }
+
+    /**
+     * @return workerId可以使用的最大值
+     */
+    public long maxWorkerId() {
+        return ~(-1L << workerIdBits);
+    }
+
+    /**
+     * @return 节点号（dataCenterId和workerId合在一起）可以使用的最大值
+     */
+    public long maxNodeId() {
+        return ~(-1L << (dataCenterIdBits + workerIdBits));
+    }
+
+    /**
+     * @return 毫秒内序列的掩码，也是序列的最大值
+     */
+    public long sequenceMask() {
+        return ~(-1L << sequenceBits);
+    }
+
+    int workerIdShift() {
+        return sequenceBits;
+    }
+
+    int dataCenterIdShift() {
+        return sequenceBits + workerIdBits;
+    }
+
+    int timestampShift() {
+        return sequenceBits + workerIdBits + dataCenterIdBits;
+    }
+
+    /**
+     * @param id ID
+     * @return 生成ID的时间，毫秒时间戳
+     */
+    public long timestamp(long id) {
+        return (id >>> timestampShift()) + startTime;
+    }
+
+    /**
+     * @param id ID
+     * @return 生成ID的dataCenterId
+     */
+    public long dataCenterId(long id) {
+        return (id >>> dataCenterIdShift()) & maxDataCenterId();
+    }
+
+    /**
+     * @param id ID
+     * @return 生成ID的workerId
+     */
+    public long workerId(long id) {
+        return (id >>> workerIdShift()) & maxWorkerId();
+    }
+
+    /**
+     * @param id ID
+     * @return 生成ID的节点号，即dataCenterId和workerId合在一起
+     */
+    public long nodeId(long id) {
+        return (id >>> workerIdShift()) & maxNodeId();
+    }
+
+    /**
+     * @param id ID
+     * @return ID的毫秒内序列
+     */
+    public long sequence(long id) {
+        return id & sequenceMask();
+    }
+
+    /**
+     * 一次解析ID的全部组成部分，便于打印和调试；热点路径上使用单独的解析方法
+     *
+     * @param id ID
+     * @return 解析结果
+     */
+    public DecodedId decode(long id) {
+        return new DecodedId(timestamp(id), dataCenterId(id), workerId(id), sequence(id));
+    }
+
+    /**
+     * @param timestamp    生成ID的时间，毫秒时间戳
+     * @param dataCenterId 数据中心ID
+     * @param workerId     工作机器ID
+     * @param sequence     毫秒内序列
+     */
+    public record DecodedId(long timestamp, long dataCenterId, long workerId, long sequence) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.storyhasyou.kratos.toolkit;
+
+/**
+ * 机器号分配的扩展点
+ * <p>
+ * {@link Sequence} 默认由MAC地址和进程号推算机器号，容器环境中进程号相同、IP被回收复用时不同节点可能得到相同的机器号，
+ * 生成重复的ID。实现类负责在集群范围内分配不重复的节点号，启动时分配一次，取号时不再访问。
+ * </p>
+ *
+ * @author fangxi
+ */
+public interface WorkerIdAllocator {
+
+    /**
+     * 分配一个在集群内唯一的节点号
+     *
+     * @param maxNodeId 最大节点号，见 {@link Sequence#MAX_NODE_ID}
+     * @return 节点号，范围为 0 ~ maxNodeId
+     */
+    long allocate(long maxNodeId);
+}
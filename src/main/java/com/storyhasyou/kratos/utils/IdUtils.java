@@ -1,9 +1,15 @@
 package com.storyhasyou.kratos.utils;
 
 import cn.hutool.core.date.DatePattern;
+import com.storyhasyou.kratos.toolkit.CachedSequence;
 import com.storyhasyou.kratos.toolkit.Sequence;
 import com.storyhasyou.kratos.toolkit.StringPool;
+import com.storyhasyou.kratos.toolkit.WorkerIdAllocator;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
@@ -21,23 +27,135 @@ public final class IdUtils {
      */
     public static final DateTimeFormatter MILLISECOND = DatePattern.PURE_DATETIME_MS_FORMATTER;
     /**
-     * 主机和进程的机器码
+     * 开启预生成ID的环形缓冲区：-Dblades-of-chaos.id.cached=true
      */
-    private static final Sequence SEQUENCE = new Sequence();
+    public static final String CACHED_PROPERTY = "blades-of-chaos.id.cached";
+    /**
+     * 环形缓冲区大小：-Dblades-of-chaos.id.buffer-size=65536
+     */
+    public static final String BUFFER_SIZE_PROPERTY = "blades-of-chaos.id.buffer-size";
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    private static final boolean CACHED = Boolean.getBoolean(CACHED_PROPERTY);
+    /**
+     * 秒级格式化时间，时间 ID 的前缀按秒缓存
+     */
+    private static final DateTimeFormatter SECOND = DatePattern.PURE_DATETIME_FORMATTER;
+    /**
+     * 最近一秒格式化后的前缀，同一秒内的时间 ID 直接复用
+     */
+    private static volatile SecondPrefix secondPrefix = new SecondPrefix(Long.MIN_VALUE, new byte[0]);
+    /**
+     * 当前的ID生成器，默认使用主机和进程的机器码，{@link #initialize(WorkerIdAllocator)} 之后替换为分配到的节点号
+     */
+    private static volatile Generator generator = Generator.of(new Sequence());
+    /**
+     * 节点号租约的截止时间，{@link System#nanoTime()}，取号时超过截止时间直接失败，不依赖续租线程及时暂停；
+     * 为 {@link Long#MAX_VALUE} 时不受租约限制
+     */
+    private static volatile long leaseDeadlineNanos = Long.MAX_VALUE;
 
     private IdUtils() {
 
     }
 
+    /**
+     * 使用集群内唯一的节点号重新初始化ID生成器，应在应用启动时、开始取号之前调用；
+     * 节点号的租约失效后换用新的节点号时再次调用，同时解除 {@link #suspend(String)}。
+     * 分配到的节点号与正在使用的相同时沿用原来的生成器，重建会丢失序列状态，重复发出当前毫秒或环形缓冲区借用过的毫秒内已经发出的ID
+     *
+     * @param workerIdAllocator 节点号分配
+     */
+    public static synchronized void initialize(WorkerIdAllocator workerIdAllocator) {
+        long nodeId = workerIdAllocator.allocate(Sequence.MAX_NODE_ID);
+        Generator previous = generator;
+        if (previous.sequence().nodeId() == nodeId) {
+            generator = new Generator(previous.sequence(), previous.cachedSequence(), null);
+            return;
+        }
+        generator = Generator.of(Sequence.ofNodeId(nodeId));
+        if (previous.cachedSequence() != null) {
+            previous.cachedSequence().close();
+        }
+    }
+
+    /**
+     * 设置节点号租约的截止时间，超过截止时间之后 {@link #getId()} 等方法抛出 IllegalStateException，直到再次延长。
+     * 由续租方在每次租用或续租成功后调用，截止时间应早于Redis中租约实际到期的时间
+     *
+     * @param deadlineNanos 截止时间，{@link System#nanoTime()}
+     */
+    public static void leaseUntil(long deadlineNanos) {
+        leaseDeadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 取消节点号租约的截止时间，用于没有租约的节点号，例如本地文件兜底的节点号
+     */
+    public static void clearLeaseDeadline() {
+        leaseDeadlineNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * 暂停取号，之后 {@link #getId()} 等方法抛出 IllegalStateException，直到 {@link #resume()} 或重新 {@link #initialize(WorkerIdAllocator)}。
+     * 用于节点号的租约失效、不能再保证集群内唯一的时候，宁可取号失败也不生成重复的ID
+     *
+     * @param reason 暂停的原因，作为异常信息
+     */
+    public static synchronized void suspend(String reason) {
+        Generator current = generator;
+        generator = new Generator(current.sequence(), current.cachedSequence(), reason);
+    }
+
+    /**
+     * 恢复取号，沿用暂停前的ID生成器，同一节点号下的序列不会回退
+     */
+    public static synchronized void resume() {
+        Generator current = generator;
+        if (current.suspended() != null) {
+            generator = new Generator(current.sequence(), current.cachedSequence(), null);
+        }
+    }
+
     /**
      * 获取唯一ID
      *
      * @return id id
      */
     public static long getId() {
-        return SEQUENCE.nextId();
+        Generator current = generator.available();
+        return current.cachedSequence() != null ? current.cachedSequence().nextId() : current.sequence().nextId();
     }
 
+    /**
+     * 批量获取唯一ID，同一毫秒内的ID一次预留，适合批量导入等场景
+     *
+     * @param n 个数
+     * @return 递增的ID
+     */
+    public static long[] getIds(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n can't be less than 0");
+        }
+        long[] ids = new long[n];
+        getIds(ids, 0, n);
+        return ids;
+    }
+
+    /**
+     * 批量获取唯一ID并填充到调用方提供的数组中，数组可以复用
+     *
+     * @param buffer 目标数组
+     * @param offset 起始下标
+     * @param length 个数
+     */
+    public static void getIds(long[] buffer, int offset, int length) {
+        Generator current = generator.available();
+        if (current.cachedSequence() != null) {
+            current.cachedSequence().nextIds(buffer, offset, length);
+        } else {
+            current.sequence().nextIds(buffer, offset, length);
+        }
+    }
 
     /**
      * 获取唯一ID
@@ -45,7 +163,7 @@ public final class IdUtils {
      * @return id id str
      */
     public static String getIdStr() {
-        return String.valueOf(SEQUENCE.nextId());
+        return String.valueOf(getId());
     }
 
 
@@ -65,7 +183,22 @@ public final class IdUtils {
      * @return the time id
      */
     public static String getTimeId() {
-        return getMillisecond() + getIdStr();
+        long now = System.currentTimeMillis();
+        long id = getId();
+        byte[] prefix = secondPrefix(Math.floorDiv(now, 1000L));
+        int millis = (int) Math.floorMod(now, 1000L);
+        int idLength = digits(id);
+        // 只有时间和数字，按ISO_8859_1构造字符串不需要编码
+        byte[] buffer = new byte[prefix.length + 3 + idLength];
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+        buffer[prefix.length] = (byte) ('0' + millis / 100);
+        buffer[prefix.length + 1] = (byte) ('0' + millis / 10 % 10);
+        buffer[prefix.length + 2] = (byte) ('0' + millis % 10);
+        for (int i = buffer.length - 1; i >= buffer.length - idLength; i--) {
+            buffer[i] = (byte) ('0' + id % 10);
+            id /= 10;
+        }
+        return new String(buffer, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -77,4 +210,61 @@ public final class IdUtils {
         ThreadLocalRandom random = ThreadLocalRandom.current();
         return new UUID(random.nextLong(), random.nextLong()).toString().replace(StringPool.DASH, StringPool.EMPTY);
     }
+
+    /**
+     * @param sequence       ID生成器
+     * @param cachedSequence 开启缓存模式时接管sequence的环形缓冲区，之后所有ID都从这里获取；未开启时为null
+     * @param suspended      暂停取号的原因，正常取号时为null
+     */
+    private record Generator(Sequence sequence, CachedSequence cachedSequence, String suspended) {
+
+        private static Generator of(Sequence sequence) {
+            return new Generator(sequence, CACHED ? new CachedSequence(sequence, Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE)) : null, null);
+        }
+
+        private Generator available() {
+            if (suspended != null) {
+                throw new IllegalStateException("id generation is suspended: " + suspended);
+            }
+            long deadline = leaseDeadlineNanos;
+            if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+                throw new IllegalStateException("id generation is suspended: lease of worker id is not renewed in time");
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @param epochSecond 秒级时间戳
+     * @return 这一秒在系统默认时区下 yyyyMMddHHmmss 格式的ASCII字节，同一秒内只格式化一次
+     */
+    private static byte[] secondPrefix(long epochSecond) {
+        SecondPrefix cached = secondPrefix;
+        if (cached.epochSecond() != epochSecond) {
+            String formatted = LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault()).format(SECOND);
+            cached = new SecondPrefix(epochSecond, formatted.getBytes(StandardCharsets.ISO_8859_1));
+            secondPrefix = cached;
+        }
+        return cached.digits();
+    }
+
+    /**
+     * @param value 非负数
+     * @return 十进制位数
+     */
+    private static int digits(long value) {
+        int length = 1;
+        while (value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @param epochSecond 秒级时间戳
+     * @param digits      格式化后的ASCII字节，只读
+     */
+    private record SecondPrefix(long epochSecond, byte[] digits) {
+    }
 }
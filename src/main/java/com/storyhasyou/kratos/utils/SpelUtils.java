@@ -3,54 +3,200 @@ package com.storyhasyou.kratos.utils;
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.springframework.core.StandardReflectionParameterNameDiscoverer;
-import org.springframework.expression.ExpressionParser;
+import org.springframework.aop.aspectj.MethodInvocationProceedingJoinPoint;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author fangxi created by 2023/10/25
  */
 public class SpelUtils {
 
+    /**
+     * 表达式缓存的上限，防止调用方传入动态拼接的表达式导致缓存无限增长
+     */
+    private static final int MAX_CACHE_SIZE = 4096;
+
+    private static final String[] NO_PARAMETER_NAMES = new String[0];
+
+    /**
+     * 解析器线程安全，全局共享。MIXED模式下表达式多次执行后会被编译成字节码，
+     * 参数类型变化导致编译后的表达式执行失败时自动回退到解释执行
+     */
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, SpelUtils.class.getClassLoader()));
+
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 按 (方法, 表达式) 缓存解析后的表达式，编译后的字节码与参数类型相关，同一个方法的参数类型是稳定的
+     */
+    private static final Map<ExpressionKey, Expression> EXPRESSION_CACHE = new ConcurrentHashMap<>();
+
+    private static final Map<Method, String[]> PARAMETER_NAMES_CACHE = new ConcurrentHashMap<>();
+
     public static String parse(JoinPoint joinPoint, String key) {
         if (StringUtils.isBlank(key)) {
             return null;
         }
         
         try {
-            Object[] args = joinPoint.getArgs();
             MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-            
-            // 优先尝试从MethodSignature获取参数名（适用于测试环境）
-            String[] paraNameArr = methodSignature.getParameterNames();
-            
+            Method method = methodSignature.getMethod();
+
+            // Spring AOP的MethodSignature每次调用都会重新发现参数名，这里直接按方法缓存；
+            // 其他情况（AspectJ织入、测试环境）优先从MethodSignature获取参数名
+            String[] paraNameArr = joinPoint instanceof MethodInvocationProceedingJoinPoint
+                    ? getParameterNames(method)
+                    : methodSignature.getParameterNames();
+
             // 如果获取不到，则使用Spring的参数名发现器（生产环境）
             if (paraNameArr == null || paraNameArr.length == 0) {
-                Method method = methodSignature.getMethod();
-                StandardReflectionParameterNameDiscoverer discoverer = new StandardReflectionParameterNameDiscoverer();
-                paraNameArr = discoverer.getParameterNames(method);
+                paraNameArr = getParameterNames(method);
             }
-            
-            if (paraNameArr == null || paraNameArr.length == 0) {
-                return null;
-            }
-            
-            // 使用SPEL进行key的解析
-            ExpressionParser parser = new SpelExpressionParser();
-            // SPEL上下文
-            StandardEvaluationContext context = new StandardEvaluationContext();
-            // 把方法参数放入SPEL上下文中
-            for (int i = 0; i < paraNameArr.length && i < args.length; i++) {
-                context.setVariable(paraNameArr[i], args[i]);
-            }
-            
-            return parser.parseExpression(key).getValue(context, String.class);
+
+            return evaluate(method, paraNameArr, joinPoint.getArgs(), key);
         } catch (Exception e) {
             // 日志记录异常但不抛出，避免破坏业务流程
             return null;
         }
     }
+
+    /**
+     * 以方法参数为上下文解析SPEL表达式
+     *
+     * @param method 方法
+     * @param args   方法参数
+     * @param key    SPEL表达式
+     * @return 解析结果，表达式为空或者解析失败时返回null
+     */
+    public static String parse(Method method, Object[] args, String key) {
+        if (StringUtils.isBlank(key)) {
+            return null;
+        }
+        try {
+            return evaluate(method, getParameterNames(method), args, key);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 获取解析后的表达式，供调用方预先缓存
+     *
+     * @param method 方法
+     * @param key    SPEL表达式
+     * @return 解析后的表达式，表达式为空或者语法错误时返回null
+     */
+    public static Expression parseExpression(Method method, String key) {
+        if (StringUtils.isBlank(key)) {
+            return null;
+        }
+        try {
+            return getExpression(method, key);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 以方法参数为上下文执行预先解析好的表达式
+     *
+     * @param expression     {@link #parseExpression(Method, String)} 返回的表达式
+     * @param parameterNames {@link #getParameterNames(Method)} 返回的参数名
+     * @param args           方法参数
+     * @return 执行结果，执行失败时返回null
+     */
+    public static String evaluate(Expression expression, String[] parameterNames, Object[] args) {
+        if (expression == null) {
+            return null;
+        }
+        try {
+            return evaluate(parameterNames, args, expression);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 以方法参数为上下文执行预先解析好的表达式，返回原始结果，用于表达式结果为集合等非字符串的场景
+     *
+     * @param expression     {@link #parseExpression(Method, String)} 返回的表达式
+     * @param parameterNames {@link #getParameterNames(Method)} 返回的参数名
+     * @param args           方法参数
+     * @return 执行结果，执行失败时返回null
+     */
+    public static Object evaluateValue(Expression expression, String[] parameterNames, Object[] args) {
+        if (expression == null || parameterNames == null || parameterNames.length == 0) {
+            return null;
+        }
+        try {
+            return expression.getValue(createContext(parameterNames, args));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 获取方法的参数名，结果按方法缓存
+     *
+     * @param method 方法
+     * @return 参数名，获取不到时返回空数组
+     */
+    public static String[] getParameterNames(Method method) {
+        if (method == null) {
+            return null;
+        }
+        return PARAMETER_NAMES_CACHE.computeIfAbsent(method, m -> {
+            String[] parameterNames = PARAMETER_NAME_DISCOVERER.getParameterNames(m);
+            return parameterNames != null ? parameterNames : NO_PARAMETER_NAMES;
+        });
+    }
+
+    private static String evaluate(Method method, String[] paraNameArr, Object[] args, String key) {
+        return evaluate(paraNameArr, args, getExpression(method, key));
+    }
+
+    private static String evaluate(String[] paraNameArr, Object[] args, Expression expression) {
+        if (paraNameArr == null || paraNameArr.length == 0) {
+            return null;
+        }
+        return expression.getValue(createContext(paraNameArr, args), String.class);
+    }
+
+    private static StandardEvaluationContext createContext(String[] paraNameArr, Object[] args) {
+        // SPEL上下文
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        // 把方法参数放入SPEL上下文中
+        for (int i = 0; i < paraNameArr.length && i < args.length; i++) {
+            context.setVariable(paraNameArr[i], args[i]);
+        }
+        return context;
+    }
+
+    private static Expression getExpression(Method method, String key) {
+        ExpressionKey expressionKey = new ExpressionKey(method, key);
+        Expression expression = EXPRESSION_CACHE.get(expressionKey);
+        if (expression != null) {
+            return expression;
+        }
+        expression = PARSER.parseExpression(key);
+        if (EXPRESSION_CACHE.size() < MAX_CACHE_SIZE) {
+            Expression previous = EXPRESSION_CACHE.putIfAbsent(expressionKey, expression);
+            return previous != null ? previous : expression;
+        }
+        return expression;
+    }
+
+    private record ExpressionKey(Method method, String expression) {
+    }
 }
@@ -0,0 +1,128 @@
+package com.storyhasyou.kratos.handler;
+
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * 按Lua脚本内容返回预设结果的RedisTemplate，供限流、并发锁、机器号分配等处理器的单元测试使用
+ * <p>
+ * 每次执行都记录脚本、KEYS和ARGV，没有预设结果的脚本直接抛出异常，避免测试误用了其他脚本。
+ * pipeline中的SCRIPT LOAD返回脚本的SHA1，EVALSHA按SHA1记录并返回1（看门狗续期成功）
+ * </p>
+ *
+ * @author fangxi
+ */
+public class ScriptedRedisTemplate extends RedisTemplate<String, Object> {
+
+    private final Map<String, Function<Invocation, ?>> responses = new ConcurrentHashMap<>();
+    private final List<Invocation> invocations = new CopyOnWriteArrayList<>();
+
+    /**
+     * 脚本执行时根据本次调用计算结果，可以抛出异常模拟Redis不可用
+     *
+     * @param script   脚本内容，LuaScriptConstant中的常量
+     * @param response 结果
+     * @return this
+     */
+    public ScriptedRedisTemplate respond(String script, Function<Invocation, ?> response) {
+        responses.put(script, response);
+        return this;
+    }
+
+    /**
+     * 脚本执行时返回固定结果
+     *
+     * @param script 脚本内容，LuaScriptConstant中的常量
+     * @param result 结果，可以为null
+     * @return this
+     */
+    public ScriptedRedisTemplate respondWith(String script, Object result) {
+        return respond(script, invocation -> result);
+    }
+
+    /**
+     * @param script 脚本内容
+     * @return 按执行顺序排列的该脚本的调用，pipeline中通过EVALSHA执行的调用也包括在内
+     */
+    public List<Invocation> invocations(String script) {
+        String sha1 = RedisScript.of(script).getSha1();
+        return invocations.stream().filter(invocation -> invocation.script().equals(script) || invocation.script().equals(sha1)).toList();
+    }
+
+    /**
+     * @return 全部脚本的执行次数
+     */
+    public int calls() {
+        return invocations.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, RedisSerializer<?> argsSerializer, RedisSerializer<T> resultSerializer, List<String> keys, Object... args) {
+        Invocation invocation = new Invocation(script.getScriptAsString(), List.copyOf(keys), List.of(args));
+        invocations.add(invocation);
+        Function<Invocation, ?> response = responses.get(invocation.script());
+        if (response == null) {
+            throw new IllegalStateException("no response for script: " + invocation.script());
+        }
+        return (T) response.apply(invocation);
+    }
+
+    @Override
+    public List<Object> executePipelined(RedisCallback<?> action, RedisSerializer<?> resultSerializer) {
+        List<Object> results = new ArrayList<>();
+        RedisScriptingCommands scriptingCommands = Mockito.mock(RedisScriptingCommands.class, call -> {
+            Object[] arguments = call.getArguments();
+            switch (call.getMethod().getName()) {
+                case "scriptLoad" -> results.add(RedisScript.of(new String((byte[]) arguments[0], StandardCharsets.UTF_8)).getSha1());
+                case "evalSha" -> {
+                    // Mockito可能把可变参数展开成单独的参数
+                    Object[] keysAndArgs = arguments.length == 4 && arguments[3] instanceof byte[][] raw ? raw : Arrays.copyOfRange(arguments, 3, arguments.length);
+                    int numKeys = (int) arguments[2];
+                    List<String> values = Arrays.stream(keysAndArgs).map(bytes -> new String((byte[]) bytes, StandardCharsets.UTF_8)).toList();
+                    invocations.add(new Invocation(String.valueOf(arguments[0]), values.subList(0, numKeys), List.copyOf(values.subList(numKeys, values.size()))));
+                    results.add(1L);
+                }
+                default -> {
+                }
+            }
+            return null;
+        });
+        RedisConnection connection = Mockito.mock(RedisConnection.class);
+        Mockito.when(connection.scriptingCommands()).thenReturn(scriptingCommands);
+        action.doInRedis(connection);
+        return results;
+    }
+
+    /**
+     * 一次脚本执行
+     *
+     * @param script 脚本内容
+     * @param keys   KEYS
+     * @param args   ARGV
+     */
+    public record Invocation(String script, List<String> keys, List<Object> args) {
+
+        /**
+         * @param index ARGV下标，从0开始
+         * @return 参数的字符串形式
+         */
+        public String arg(int index) {
+            return String.valueOf(args.get(index));
+        }
+    }
+}
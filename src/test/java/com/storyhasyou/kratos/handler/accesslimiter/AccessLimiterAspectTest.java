@@ -0,0 +1,155 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.annotation.AccessLimiter;
+import com.storyhasyou.kratos.exceptions.BusinessException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * AccessLimiterAspect单元测试类
+ *
+ * 【强制】测试异步方法在限流通过后切换到配置的执行器中执行，以及返回值类型的识别
+ * 【强制】测试同一方法声明多个限流时的元数据解析、被拦截规则与声明的对应关系，以及被拦截时不消耗其他规则的额度
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class AccessLimiterAspectTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "access-limiter-test"));
+    private final List<String> records = new ArrayList<>();
+    private final AccessLimiterAspect aspect = new AccessLimiterAspect(new LocalRateLimiterBackend(100),
+            List.of((limiter, rule, allowed, elapsedNanos) -> records.add(limiter + "=" + allowed)), executor);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void should_ProceedOnConfiguredExecutor_When_MethodReturnsCompletableFuture() throws Throwable {
+        // Given
+        ProceedingJoinPoint joinPoint = joinPoint("async");
+        when(joinPoint.proceed()).thenAnswer(invocation -> CompletableFuture.completedFuture(Thread.currentThread().getName()));
+
+        // When
+        Object result = aspect.around(joinPoint);
+
+        // Then
+        assertThat(((CompletableFuture<?>) result).get(5, TimeUnit.SECONDS)).isEqualTo("access-limiter-test");
+    }
+
+    @Test
+    void should_ProceedInCallerThread_When_MethodReturnsFuture() throws Throwable {
+        // Given
+        ProceedingJoinPoint joinPoint = joinPoint("future");
+        FutureTask<String> future = new FutureTask<>(() -> "done");
+        when(joinPoint.proceed()).thenReturn(future);
+
+        // When
+        Object result = aspect.around(joinPoint);
+
+        // Then
+        assertThat(result).isSameAs(future);
+    }
+
+    @Test
+    void should_BuildLimiterPerDeclaration_When_MultipleAccessLimiters() throws NoSuchMethodException {
+        // Given
+        Method method = LimitedService.class.getMethod("multi", String.class);
+
+        // When
+        AccessLimiterMetadata metadata = AccessLimiterMetadata.of(method, List.of(method.getAnnotationsByType(AccessLimiter.class)));
+        List<RateLimitRule> rules = metadata.resolve(new Object[]{"10.0.0.1"});
+
+        // Then - 默认key按声明顺序区分，methodKey解析为SPEL
+        assertThat(metadata.limiters()).extracting(AccessLimiterMetadata.LimiterMetadata::name)
+                .containsExactly("LimitedService.multi", "LimitedService.multi:1");
+        assertThat(rules).extracting(RateLimitRule::key)
+                .containsExactly(AccessLimiterAspect.PREFIX + "multi(java.lang.String)", AccessLimiterAspect.PREFIX + "ip:10.0.0.1");
+        assertThat(rules).extracting(RateLimitRule::limit).containsExactly(3, 1);
+    }
+
+    @Test
+    void should_RecordBlockingLimiterOnly_When_LaterLimiterBlocks() throws Throwable {
+        // Given
+        ProceedingJoinPoint joinPoint = joinPoint("multi", "10.0.0.1");
+        when(joinPoint.proceed()).thenReturn("ok");
+        aspect.around(joinPoint);
+        records.clear();
+
+        // When & Then - 第二个限流拦截，统计记录在它的声明名称上
+        assertThatThrownBy(() -> aspect.around(joinPoint)).isInstanceOf(BusinessException.class);
+        assertThat(records).containsExactly("LimitedService.multi:1=false");
+    }
+
+    @Test
+    void should_NotConsumeGlobalLimit_When_IpLimiterBlocks() throws Throwable {
+        // Given - 全局限流3次，同一个IP限流1次
+        ProceedingJoinPoint blockedIp = joinPoint("multi", "10.0.0.1");
+        when(blockedIp.proceed()).thenReturn("ok");
+        aspect.around(blockedIp);
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> aspect.around(blockedIp)).isInstanceOf(BusinessException.class);
+        }
+
+        // When - 被拦截的请求没有消耗全局额度，其他IP还能用完剩下的2次
+        ProceedingJoinPoint otherIp = joinPoint("multi", "10.0.0.2");
+        when(otherIp.proceed()).thenReturn("ok");
+        ProceedingJoinPoint thirdIp = joinPoint("multi", "10.0.0.3");
+        when(thirdIp.proceed()).thenReturn("ok");
+
+        // Then
+        assertThat(aspect.around(otherIp)).isEqualTo("ok");
+        assertThat(aspect.around(thirdIp)).isEqualTo("ok");
+    }
+
+    private static ProceedingJoinPoint joinPoint(String methodName, String... args) throws NoSuchMethodException {
+        Class<?>[] parameterTypes = new Class<?>[args.length];
+        Arrays.fill(parameterTypes, String.class);
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(LimitedService.class.getMethod(methodName, parameterTypes));
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getTarget()).thenReturn(new LimitedService());
+        when(joinPoint.getArgs()).thenReturn(args);
+        return joinPoint;
+    }
+
+    public static class LimitedService {
+
+        @AccessLimiter(limit = 100)
+        public CompletableFuture<String> async() {
+            return CompletableFuture.completedFuture("async");
+        }
+
+        @AccessLimiter(limit = 100)
+        public Future<String> future() {
+            return new FutureTask<>(() -> "future");
+        }
+
+        @AccessLimiter(limit = 3, timeout = 1, unit = TimeUnit.HOURS)
+        @AccessLimiter(methodKey = "'ip:' + #ip", limit = 1, timeout = 1, unit = TimeUnit.HOURS)
+        public String multi(String ip) {
+            return ip;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+import com.storyhasyou.kratos.handler.ScriptedRedisTemplate;
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * AccessLimiterHandler单元测试类
+ *
+ * 【强制】测试多个限流规则在一次Lua调用中判断，以及脚本返回的 {下标, 剩余限流毫秒} 与规则的对应关系
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class AccessLimiterHandlerTest {
+
+    private final ScriptedRedisTemplate redisTemplate = new ScriptedRedisTemplate();
+    private final AccessLimiterHandler handler = new AccessLimiterHandler(redisTemplate,
+            RedisScript.of(LuaScriptConstant.RATE_LIMITER, Long.class), null, null, new BlockedKeyCache(100));
+    private final RateLimitRule global = RateLimitRule.of("global", RateLimitAlgorithmEnum.FIXED_WINDOW, 100, 1000);
+    private final RateLimitRule ip = RateLimitRule.of("ip:1", RateLimitAlgorithmEnum.SLIDING_LOG, 1, 1000);
+
+    @Test
+    void should_ReturnRuleAtIndex_When_MultiScriptBlocks() {
+        // Given - 脚本返回的下标从1开始
+        redisTemplate.respondWith(LuaScriptConstant.MULTI_RATE_LIMITER, List.of(2L, 60_000L));
+
+        // When
+        RateLimitRule blocked = handler.tryAcquireAll(List.of(global, ip));
+
+        // Then
+        assertThat(blocked).isEqualTo(ip);
+        ScriptedRedisTemplate.Invocation invocation = redisTemplate.invocations(LuaScriptConstant.MULTI_RATE_LIMITER).get(0);
+        assertThat(invocation.keys()).containsExactly("global", "ip:1");
+        assertThat(invocation.args()).hasSize(1 + 2 * 5);
+        assertThat(invocation.arg(1)).isEqualTo("FIXED_WINDOW");
+        assertThat(invocation.arg(6)).isEqualTo("SLIDING_LOG");
+    }
+
+    @Test
+    void should_BlockLocallyForRetryAfter_When_MultiScriptBlocks() {
+        // Given
+        redisTemplate.respondWith(LuaScriptConstant.MULTI_RATE_LIMITER, List.of(2L, 60_000L));
+        handler.tryAcquireAll(List.of(global, ip));
+
+        // When
+        RateLimitRule blocked = handler.tryAcquireAll(List.of(global, ip));
+
+        // Then - 剩余限流时间内直接在本地拒绝，不再访问Redis
+        assertThat(blocked).isEqualTo(ip);
+        assertThat(redisTemplate.calls()).isEqualTo(1);
+    }
+
+    @Test
+    void should_ReturnNull_When_MultiScriptAllowsAll() {
+        // Given
+        redisTemplate.respondWith(LuaScriptConstant.MULTI_RATE_LIMITER, List.of(0L, 0L));
+
+        // When
+        RateLimitRule blocked = handler.tryAcquireAll(List.of(global, ip));
+
+        // Then
+        assertThat(blocked).isNull();
+    }
+}
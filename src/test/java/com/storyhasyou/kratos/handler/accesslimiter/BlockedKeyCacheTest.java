@@ -0,0 +1,60 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BlockedKeyCache单元测试类
+ *
+ * 【强制】测试被限流key在剩余限流时间内本地拒绝、到期后放行以及容量上限
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class BlockedKeyCacheTest {
+
+    @Test
+    void should_BlockLocally_When_WithinRetryAfter() {
+        // Given
+        BlockedKeyCache cache = new BlockedKeyCache(100);
+
+        // When
+        cache.block("rate:limiter:ip", 60_000);
+
+        // Then
+        assertThat(cache.isBlocked("rate:limiter:ip")).isTrue();
+        assertThat(cache.isBlocked("rate:limiter:other")).isFalse();
+    }
+
+    @Test
+    void should_Unblock_When_RetryAfterElapsed() throws InterruptedException {
+        // Given
+        BlockedKeyCache cache = new BlockedKeyCache(100);
+        cache.block("rate:limiter:ip", 20);
+
+        // When
+        Thread.sleep(30);
+
+        // Then
+        assertThat(cache.isBlocked("rate:limiter:ip")).isFalse();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void should_IgnoreNewKeys_When_FullOfUnexpiredKeys() {
+        // Given
+        BlockedKeyCache cache = new BlockedKeyCache(2);
+        cache.block("a", 60_000);
+        cache.block("b", 60_000);
+
+        // When
+        cache.block("c", 60_000);
+        cache.block("d", 0);
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.isBlocked("c")).isFalse();
+        assertThat(cache.isBlocked("d")).isFalse();
+    }
+}
@@ -0,0 +1,122 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BlockedKeyTracker单元测试类
+ *
+ * 【强制】测试Space-Saving统计被拦截最多的key的准确性和内存上限，以及分段合并后的计数区间
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class BlockedKeyTrackerTest {
+
+    @Test
+    void should_ReturnExactCounts_When_KeysWithinCapacity() {
+        // Given
+        BlockedKeyTracker tracker = new BlockedKeyTracker(10);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            tracker.offer("a");
+        }
+        for (int i = 0; i < 3; i++) {
+            tracker.offer("b");
+        }
+        tracker.offer("c");
+
+        // Then
+        List<BlockedKeyTracker.HotKey> top = tracker.top(2);
+        assertThat(top).containsExactly(new BlockedKeyTracker.HotKey("a", 5, 0), new BlockedKeyTracker.HotKey("b", 3, 0));
+        assertThat(tracker.total()).isEqualTo(9);
+    }
+
+    @Test
+    void should_KeepHeavyHitter_When_ManyDistinctKeysExceedCapacity() {
+        // Given
+        BlockedKeyTracker tracker = new BlockedKeyTracker(8);
+
+        // When 攻击者的key夹杂在大量只出现一次的key中
+        for (int i = 0; i < 1000; i++) {
+            tracker.offer("attacker");
+            tracker.offer("user-" + i);
+        }
+
+        // Then
+        BlockedKeyTracker.HotKey hottest = tracker.top(1).get(0);
+        assertThat(hottest.key()).isEqualTo("attacker");
+        assertThat(hottest.count() - hottest.error()).isLessThanOrEqualTo(1000);
+        assertThat(hottest.count()).isGreaterThanOrEqualTo(1000);
+        assertThat(tracker.top(100)).hasSize(8);
+    }
+
+    @Test
+    void should_OnlyTrackBlockedDecisions_When_Recorded() {
+        // Given
+        BlockedKeyTracker tracker = new BlockedKeyTracker(8);
+        RateLimitRule rule = RateLimitRule.of("rate:limiter:ip", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 1000);
+
+        // When
+        tracker.record("Controller.get", rule, true, 100);
+        tracker.record("Controller.get", rule, false, 100);
+        tracker.reset();
+        tracker.record("Controller.get", rule, false, 100);
+
+        // Then
+        assertThat(tracker.top(10)).containsExactly(new BlockedKeyTracker.HotKey("rate:limiter:ip", 1, 0));
+    }
+
+    @Test
+    void should_KeepCountBounds_When_StripesMerged() {
+        // Given 每个分段都已满，攻击者的key只出现在部分分段中
+        BlockedKeyTracker tracker = new BlockedKeyTracker(4, 4);
+
+        // When
+        for (int i = 0; i < 4000; i++) {
+            tracker.offer(i % 3 == 0 ? "attacker" : "user-" + i);
+        }
+
+        // Then
+        BlockedKeyTracker.HotKey hottest = tracker.top(1).get(0);
+        assertThat(hottest.key()).isEqualTo("attacker");
+        assertThat(hottest.count()).isGreaterThanOrEqualTo(1334);
+        assertThat(hottest.count() - hottest.error()).isLessThanOrEqualTo(1334);
+        assertThat(tracker.top(100)).hasSize(4);
+    }
+
+    @Test
+    void should_CountEveryBlock_When_OfferedConcurrently() throws InterruptedException {
+        // Given
+        BlockedKeyTracker tracker = new BlockedKeyTracker(8, 4);
+        int threads = 8;
+        int perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        tracker.offer("attacker");
+                    }
+                    done.countDown();
+                });
+            }
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // Then
+        assertThat(tracker.total()).isEqualTo((long) threads * perThread);
+        assertThat(tracker.top(1)).containsExactly(new BlockedKeyTracker.HotKey("attacker", (long) threads * perThread, 0));
+    }
+}
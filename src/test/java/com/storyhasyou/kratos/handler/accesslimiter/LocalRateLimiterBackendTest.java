@@ -0,0 +1,200 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * LocalRateLimiterBackend单元测试类
+ *
+ * 【强制】测试本地内存限流在各算法下的放行数量和并发安全性
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class LocalRateLimiterBackendTest {
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithmEnum.class)
+    void should_BlockRequest_When_LimitExceededInWindow(RateLimitAlgorithmEnum algorithm) {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(100);
+        RateLimitRule rule = algorithm == RateLimitAlgorithmEnum.TOKEN_BUCKET
+                ? RateLimitRule.tokenBucket("test", 5, 0.001)
+                : RateLimitRule.of("test", algorithm, 5, 3_600_000);
+
+        // When
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (backend.tryAcquire(rule)) {
+                allowed++;
+            }
+        }
+
+        // Then
+        assertThat(allowed).isEqualTo(5);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithmEnum.class)
+    void should_NotConsumeEarlierRules_When_LaterRuleBlocks(RateLimitAlgorithmEnum algorithm) {
+        // Given - 全局5次，单个IP1次
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(100);
+        RateLimitRule global = rule("global", algorithm, 5);
+        RateLimitRule ip = rule("ip", algorithm, 1);
+        assertThat(backend.tryAcquireAll(List.of(global, ip))).isNull();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            assertThat(backend.tryAcquireAll(List.of(global, ip))).isEqualTo(ip);
+        }
+
+        // Then - 被拦截的请求归还了全局许可，全局还剩4次
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (backend.tryAcquire(global)) {
+                allowed++;
+            }
+        }
+        assertThat(allowed).isEqualTo(4);
+    }
+
+    @Test
+    void should_AllowRequestAgain_When_WindowPassed() throws InterruptedException {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(100);
+        RateLimitRule rule = RateLimitRule.of("test", RateLimitAlgorithmEnum.SLIDING_LOG, 2, 50);
+        assertThat(backend.tryAcquire(rule)).isTrue();
+        assertThat(backend.tryAcquire(rule)).isTrue();
+        assertThat(backend.tryAcquire(rule)).isFalse();
+
+        // When
+        Thread.sleep(60);
+
+        // Then
+        assertThat(backend.tryAcquire(rule)).isTrue();
+    }
+
+    @Test
+    void should_LimitKeysIndependently_When_DifferentKeys() {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(100);
+
+        // When & Then
+        assertThat(backend.tryAcquire(RateLimitRule.of("a", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000))).isTrue();
+        assertThat(backend.tryAcquire(RateLimitRule.of("a", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000))).isFalse();
+        assertThat(backend.tryAcquire(RateLimitRule.of("b", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000))).isTrue();
+    }
+
+    @Test
+    void should_BoundKeyCount_When_TooManyKeys() {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(10);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            backend.tryAcquire(RateLimitRule.of("key" + i, RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000));
+        }
+
+        // Then
+        assertThat(backend.size()).isLessThanOrEqualTo(11);
+    }
+
+    @Test
+    void should_KeepBlockedKey_When_KeysRotatedPastMaxKeys() {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(10);
+        RateLimitRule blocked = RateLimitRule.of("blocked", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000);
+        assertThat(backend.tryAcquire(blocked)).isTrue();
+        assertThat(backend.tryAcquire(blocked)).isFalse();
+
+        // When - 轮换key占满并超过maxKeys
+        int rotated = 0;
+        for (int i = 0; i < 100; i++) {
+            if (backend.tryAcquire(RateLimitRule.of("rotate" + i, RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000))) {
+                rotated++;
+            }
+        }
+
+        // Then - 仍在计数的key不会被删除，新key被拒绝
+        assertThat(backend.tryAcquire(blocked)).isFalse();
+        assertThat(rotated).isEqualTo(9);
+        assertThat(backend.overflowCount()).isEqualTo(91);
+    }
+
+    @Test
+    void should_AllowWithoutCounting_When_FullAndFailOpen() {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(1, true);
+        assertThat(backend.tryAcquire(RateLimitRule.of("a", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000))).isTrue();
+        RateLimitRule overflow = RateLimitRule.of("b", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000);
+
+        // When & Then
+        assertThat(backend.tryAcquire(overflow)).isTrue();
+        assertThat(backend.tryAcquire(overflow)).isTrue();
+        assertThat(backend.size()).isEqualTo(1);
+        assertThat(backend.overflowCount()).isEqualTo(2);
+    }
+
+    @Test
+    void should_ReuseIdleSlot_When_FullAndIdleKeyExists() throws InterruptedException {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(1);
+        assertThat(backend.tryAcquire(RateLimitRule.of("a", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 20))).isTrue();
+        RateLimitRule next = RateLimitRule.of("b", RateLimitAlgorithmEnum.FIXED_WINDOW, 1, 3_600_000);
+
+        // When
+        Thread.sleep(50);
+
+        // Then - a的窗口已过，空闲后被淘汰
+        assertThat(backend.tryAcquire(next)).isTrue();
+        assertThat(backend.size()).isEqualTo(1);
+    }
+
+    @Test
+    @Timeout(10)
+    void should_NeverExceedLimit_When_ConcurrentAccess() throws Exception {
+        // Given
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(100);
+        RateLimitRule rule = RateLimitRule.of("concurrent", RateLimitAlgorithmEnum.FIXED_WINDOW, 1000, 3_600_000);
+        int threadCount = 8;
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        // When
+        for (int i = 0; i < threadCount; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (backend.tryAcquire(rule)) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        assertThat(allowed.get()).isEqualTo(1000);
+    }
+
+    private static RateLimitRule rule(String key, RateLimitAlgorithmEnum algorithm, int limit) {
+        return algorithm == RateLimitAlgorithmEnum.TOKEN_BUCKET
+                ? RateLimitRule.tokenBucket(key, limit, 0.001)
+                : RateLimitRule.of(key, algorithm, limit, 3_600_000);
+    }
+}
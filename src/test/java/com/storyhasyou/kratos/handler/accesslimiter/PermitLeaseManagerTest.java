@@ -0,0 +1,198 @@
+package com.storyhasyou.kratos.handler.accesslimiter;
+
+import com.storyhasyou.kratos.enums.RateLimitAlgorithmEnum;
+import com.storyhasyou.kratos.handler.ScriptedRedisTemplate;
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PermitLeaseManager单元测试类
+ *
+ * 【强制】测试令牌租约的批次大小、单飞续租、窗口耗尽和窗口切换时的令牌计算
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class PermitLeaseManagerTest {
+
+    private final FixedWindowLease window = new FixedWindowLease();
+    private final ScriptedRedisTemplate redisTemplate = new ScriptedRedisTemplate().respond(LuaScriptConstant.RATE_LIMITER_LEASE, window);
+    private final AccessLimiterProperties.Lease properties = new AccessLimiterProperties.Lease();
+    private PermitLeaseManager manager;
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    @Test
+    void should_CapBatchByRatio_When_LimitIsSmall() {
+        // Given
+        properties.setBatchSize(50);
+        properties.setMaxBatchRatio(0.1);
+        manager = new PermitLeaseManager(redisTemplate, properties);
+
+        // When & Then
+        assertThat(manager.batchSize(rule(100))).isEqualTo(10);
+        assertThat(manager.batchSize(rule(5))).isEqualTo(1);
+        assertThat(manager.batchSize(rule(10_000))).isEqualTo(50);
+    }
+
+    @Test
+    @Timeout(10)
+    void should_RefillOnce_When_ConcurrentCallersFindLeaseEmpty() throws InterruptedException {
+        // Given
+        properties.setBatchSize(50);
+        properties.setMaxBatchRatio(0.1);
+        properties.setRefillWait(Duration.ofSeconds(5));
+        window.delayMillis = 100;
+        manager = new PermitLeaseManager(redisTemplate, properties);
+        RateLimitRule rule = rule(10_000);
+        int threads = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        if (manager.tryAcquire(rule)) {
+                            allowed.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            start.countDown();
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // Then
+        assertThat(allowed.get()).isEqualTo(threads);
+        assertThat(redisTemplate.calls()).isEqualTo(1);
+        assertThat(window.maxConcurrentCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void should_RejectWithoutRedis_When_WindowExhausted() {
+        // Given
+        properties.setBatchSize(50);
+        properties.setMaxBatchRatio(1.0);
+        manager = new PermitLeaseManager(redisTemplate, properties);
+        RateLimitRule rule = rule(10);
+
+        // When
+        int allowed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (manager.tryAcquire(rule)) {
+                allowed++;
+            }
+        }
+
+        // Then
+        assertThat(allowed).isEqualTo(10);
+        assertThat(redisTemplate.calls()).isEqualTo(2);
+    }
+
+    @Test
+    void should_AddPermits_When_GrantedInSameWindow() {
+        // Given
+        PermitLeaseManager.PermitLease lease = new PermitLeaseManager.PermitLease();
+        lease.grant(5, 1_000, 1_000);
+
+        // When
+        lease.grant(10, 990, 1_000);
+
+        // Then
+        assertThat(lease.permits()).isEqualTo(15);
+    }
+
+    @Test
+    void should_DropLeftoverPermits_When_RedisWindowRolledOverFirst() {
+        // Given
+        PermitLeaseManager.PermitLease lease = new PermitLeaseManager.PermitLease();
+        lease.grant(5, 100, 1_000);
+
+        // When
+        lease.grant(10, 1_000, 1_000);
+
+        // Then
+        assertThat(lease.permits()).isEqualTo(10);
+    }
+
+    @Test
+    void should_ExpireExhaustion_When_WindowPassed() throws InterruptedException {
+        // Given
+        PermitLeaseManager.PermitLease lease = new PermitLeaseManager.PermitLease();
+        lease.grant(0, 20, 1_000);
+        assertThat(lease.isExhausted()).isTrue();
+
+        // When
+        Thread.sleep(30);
+
+        // Then
+        assertThat(lease.isExhausted()).isFalse();
+        assertThat(lease.tryTake()).isFalse();
+    }
+
+    private static RateLimitRule rule(int limit) {
+        return RateLimitRule.of("rate:limiter:test", RateLimitAlgorithmEnum.FIXED_WINDOW, limit, 3_600_000);
+    }
+
+    /**
+     * 按 RATE_LIMITER_LEASE 脚本的语义在内存中模拟一个固定窗口
+     */
+    private static final class FixedWindowLease implements Function<ScriptedRedisTemplate.Invocation, List<Long>> {
+
+        private final AtomicInteger concurrentCalls = new AtomicInteger();
+        private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        private final AtomicLong count = new AtomicLong();
+        private volatile long delayMillis;
+
+        @Override
+        public List<Long> apply(ScriptedRedisTemplate.Invocation invocation) {
+            maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+            try {
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                long limit = Long.parseLong(invocation.arg(0));
+                long window = Long.parseLong(invocation.arg(1));
+                long batch = Long.parseLong(invocation.arg(2));
+                long granted;
+                synchronized (this) {
+                    granted = Math.max(0, Math.min(batch, limit - count.get()));
+                    count.addAndGet(granted);
+                }
+                return List.of(granted, window);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                concurrentCalls.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.annotation.ConcurrencyLock;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ConcurrencyLockAspect单元测试类
+ *
+ * 【强制】测试解锁失败时持有登记仍然被释放，端点不会一直显示已经不再持有的锁
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class ConcurrencyLockAspectTest {
+
+    private final ConcurrencyLockHandler handler = mock(ConcurrencyLockHandler.class);
+    private final HeldLockRegistry heldLockRegistry = new HeldLockRegistry();
+    private final ConcurrencyLockAspect aspect = new ConcurrencyLockAspect(handler, List.of(new DefaultConcurrencyLockCallback()), List.of(),
+            heldLockRegistry, Runnable::run);
+
+    @Test
+    void should_ReleaseRegistration_When_UnlockFails() throws Throwable {
+        // Given
+        Method method = LockedService.class.getMethod("single");
+        when(handler.tryLock(anyString(), any(LockOptions.class))).thenReturn(true);
+        when(handler.unlock(anyString(), any(LockOptions.class))).thenThrow(new IllegalStateException("redis timeout"));
+
+        // When & Then
+        assertThatThrownBy(() -> aspect.around(joinPoint(method), method.getAnnotation(ConcurrencyLock.class)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(heldLockRegistry.size()).isZero();
+    }
+
+    @Test
+    void should_ReleaseRegistration_When_BatchUnlockFails() throws Throwable {
+        // Given
+        Method method = LockedService.class.getMethod("batch");
+        when(handler.tryLockAll(anyCollection(), any(LockOptions.class))).thenReturn(true);
+        when(handler.unlockAll(anyCollection(), any(LockOptions.class))).thenThrow(new IllegalStateException("redis timeout"));
+
+        // When & Then
+        assertThatThrownBy(() -> aspect.around(joinPoint(method), method.getAnnotation(ConcurrencyLock.class)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(heldLockRegistry.size()).isZero();
+    }
+
+    private static ProceedingJoinPoint joinPoint(Method method) throws Throwable {
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(method);
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getArgs()).thenReturn(new Object[0]);
+        when(joinPoint.proceed()).thenReturn("done");
+        return joinPoint;
+    }
+
+    public static class LockedService {
+
+        @ConcurrencyLock(key = "'order'")
+        public String single() {
+            return "done";
+        }
+
+        @ConcurrencyLock(key = "{'order', 'stock'}", batch = true)
+        public String batch() {
+            return "done";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.annotation.ConcurrencyLock;
+import org.aspectj.lang.JoinPoint;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 并发锁回调分发单元测试类
+ *
+ * 【强制】测试回调按实现类索引，未知或重复的实现类立即失败
+ * 【强制】测试所有单例创建完成后校验Bean中并发锁方法的回调类，未注册时启动失败
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class ConcurrencyLockCallbackDispatchTest {
+
+    @Test
+    void should_ResolveCallback_When_BeanRegistered() throws NoSuchMethodException {
+        // Given
+        Method method = LockedService.class.getMethod("withCustomCallback");
+        RejectCallback callback = new RejectCallback();
+
+        // When
+        ConcurrencyLockMetadata metadata = ConcurrencyLockMetadata.of(method, method.getAnnotation(ConcurrencyLock.class),
+                Map.of(RejectCallback.class, callback));
+
+        // Then
+        assertThat(metadata.callback()).isSameAs(callback);
+    }
+
+    @Test
+    void should_FailFast_When_CallbackClassHasNoBean() throws NoSuchMethodException {
+        // Given
+        Method method = LockedService.class.getMethod("withCustomCallback");
+
+        // When & Then
+        assertThatThrownBy(() -> ConcurrencyLockMetadata.of(method, method.getAnnotation(ConcurrencyLock.class),
+                Map.of(DefaultConcurrencyLockCallback.class, new DefaultConcurrencyLockCallback())))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(RejectCallback.class.getName());
+    }
+
+    @Test
+    void should_FailFast_When_CallbackTypeRegisteredTwice() {
+        // Given
+        List<ConcurrencyLockCallback> callbacks = List.of(new RejectCallback(), new RejectCallback());
+
+        // When & Then
+        assertThatThrownBy(() -> new ConcurrencyLockAspect(mock(ConcurrencyLockHandler.class), callbacks, List.of(),
+                new HeldLockRegistry(), Runnable::run))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void should_FailAtStartup_When_LockedBeanUsesUnknownCallback() {
+        // Given
+        ConcurrencyLockAspect aspect = new ConcurrencyLockAspect(mock(ConcurrencyLockHandler.class), List.of(new DefaultConcurrencyLockCallback()),
+                List.of(), new HeldLockRegistry(), Runnable::run);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("lockedService", new RootBeanDefinition(LockedService.class));
+        aspect.setBeanFactory(beanFactory);
+
+        // When & Then
+        assertThatThrownBy(aspect::afterSingletonsInstantiated)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(RejectCallback.class.getName())
+                .hasMessageContaining("withCustomCallback");
+    }
+
+    @Test
+    void should_StartUp_When_EveryCallbackClassRegistered() {
+        // Given
+        ConcurrencyLockAspect aspect = new ConcurrencyLockAspect(mock(ConcurrencyLockHandler.class),
+                List.of(new DefaultConcurrencyLockCallback(), new RejectCallback()), List.of(), new HeldLockRegistry(), Runnable::run);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("lockedService", new RootBeanDefinition(LockedService.class));
+        aspect.setBeanFactory(beanFactory);
+
+        // When & Then
+        assertThatCode(aspect::afterSingletonsInstantiated).doesNotThrowAnyException();
+    }
+
+    public static class LockedService {
+
+        @ConcurrencyLock(key = "'order'", callbackClass = RejectCallback.class)
+        public void withCustomCallback() {
+        }
+    }
+
+    public static class RejectCallback implements ConcurrencyLockCallback {
+
+        @Override
+        public void execute(JoinPoint joinPoint, ConcurrencyLock concurrencyLock) {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ConcurrencyLockContext单元测试类
+ *
+ * 【强制】测试嵌套加锁时fencing token按栈保存和恢复
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class ConcurrencyLockContextTest {
+
+    @Test
+    void should_ReturnInnermostToken_When_LocksNested() {
+        // Given
+        ConcurrencyLockContext.push(7);
+        ConcurrencyLockContext.push(42);
+
+        // When & Then
+        assertThat(ConcurrencyLockContext.currentFencingToken()).hasValue(42);
+        ConcurrencyLockContext.pop();
+        assertThat(ConcurrencyLockContext.currentFencingToken()).hasValue(7);
+        ConcurrencyLockContext.pop();
+        assertThat(ConcurrencyLockContext.currentFencingToken()).isEmpty();
+    }
+
+    @Test
+    void should_NotShareTokens_When_OtherThreadReads() throws InterruptedException {
+        // Given
+        ConcurrencyLockContext.push(1);
+        boolean[] emptyInOtherThread = new boolean[1];
+
+        // When
+        Thread thread = Thread.ofVirtual().start(() -> emptyInOtherThread[0] = ConcurrencyLockContext.currentFencingToken().isEmpty());
+        thread.join();
+        ConcurrencyLockContext.pop();
+
+        // Then
+        assertThat(emptyInOtherThread[0]).isTrue();
+    }
+}
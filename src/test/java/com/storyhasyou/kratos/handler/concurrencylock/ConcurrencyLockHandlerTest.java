@@ -0,0 +1,296 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.enums.LockTypeEnum;
+import com.storyhasyou.kratos.handler.ScriptedRedisTemplate;
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ConcurrencyLockHandler单元测试类
+ *
+ * 【强制】测试等待锁的线程被中断时立即放弃等待，不对Redis空转
+ * 【强制】测试不续期的重入解锁不影响外层加锁的看门狗登记
+ * 【强制】测试读锁、写锁和信号量传给Lua脚本的KEYS和ARGV，以及共享锁不使用本地锁表
+ * 【强制】测试共享锁抢到后把解锁通知转交给下一个等待者，看门狗按锁类型选择续期脚本
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class ConcurrencyLockHandlerTest {
+
+    private static final String KEY = "concurrency-lock:order";
+    private static final List<Long> LOCKED = List.of(0L, 0L);
+
+    private final ScriptedRedisTemplate redisTemplate = new ScriptedRedisTemplate()
+            .respondWith(LuaScriptConstant.UN_LOCK, 1L)
+            .respondWith(LuaScriptConstant.READ_WRITE_UN_LOCK, 1L)
+            .respondWith(LuaScriptConstant.SEMAPHORE_RELEASE, 1L);
+    private final ConcurrencyLockNotifier notifier = new ConcurrencyLockNotifier();
+    private final ConcurrencyLockHandler handler = new ConcurrencyLockHandler(redisTemplate, null, notifier, null);
+
+    @AfterEach
+    void tearDown() {
+        // 清除中断标记，避免影响同一线程中的其他测试
+        Thread.interrupted();
+    }
+
+    @Test
+    void should_GiveUpWaiting_When_ThreadInterrupted() {
+        // Given
+        LockOptions options = new LockOptions(LockTypeEnum.EXCLUSIVE, 1, 10_000, false, 2_000, false);
+        redisTemplate.respondWith(LuaScriptConstant.TRY_LOCK, List.of(5_000L, 1L));
+        Thread.currentThread().interrupt();
+
+        // When
+        long start = System.nanoTime();
+        boolean locked = handler.tryLock(KEY, options);
+
+        // Then
+        assertThat(locked).isFalse();
+        assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+        assertThat(redisTemplate.calls()).isLessThanOrEqualTo(3);
+        assertThat(notifier.size()).isZero();
+    }
+
+    @Test
+    void should_GiveUpWaiting_When_ThreadInterruptedInBatchLock() {
+        // Given
+        LockOptions options = new LockOptions(LockTypeEnum.EXCLUSIVE, 1, 10_000, false, 2_000, false);
+        redisTemplate.respondWith(LuaScriptConstant.MULTI_TRY_LOCK, List.of(5_000L, 1L));
+        Thread.currentThread().interrupt();
+
+        // When
+        long start = System.nanoTime();
+        boolean locked = handler.tryLockAll(List.of("concurrency-lock:a", "concurrency-lock:b"), options);
+
+        // Then
+        assertThat(locked).isFalse();
+        assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+        assertThat(redisTemplate.calls()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    void should_KeepOuterWatch_When_ReentrantLockWithoutRenewReleased() {
+        // Given
+        LockOptions outer = new LockOptions(LockTypeEnum.EXCLUSIVE, 1, 10_000, true, 0, false);
+        LockOptions inner = new LockOptions(LockTypeEnum.EXCLUSIVE, 1, 10_000, false, 0, false);
+        redisTemplate.respondWith(LuaScriptConstant.TRY_LOCK, LOCKED);
+        try (ConcurrencyLockWatchdog watchdog = new ConcurrencyLockWatchdog(redisTemplate, Duration.ofHours(1))) {
+            ConcurrencyLockHandler watchedHandler = new ConcurrencyLockHandler(redisTemplate, watchdog, notifier, null);
+            assertThat(watchedHandler.tryLock(KEY, outer)).isTrue();
+            assertThat(watchedHandler.tryLock(KEY, inner)).isTrue();
+
+            // When
+            watchedHandler.unlock(KEY, inner);
+
+            // Then
+            assertThat(watchdog.size()).isEqualTo(1);
+            watchedHandler.unlock(KEY, outer);
+            assertThat(watchdog.size()).isZero();
+        }
+    }
+
+    @Test
+    void should_PassReadersKey_When_ReadLockAcquiredAndReleased() {
+        // Given - 读锁忽略fencing
+        LockOptions options = new LockOptions(LockTypeEnum.READ, 1, 10_000, false, 0, true);
+        redisTemplate.respondWith(LuaScriptConstant.READ_LOCK, LOCKED);
+
+        // When
+        boolean locked = handler.tryLock(KEY, options);
+        handler.unlock(KEY, options);
+
+        // Then
+        assertThat(locked).isTrue();
+        ScriptedRedisTemplate.Invocation lock = redisTemplate.invocations(LuaScriptConstant.READ_LOCK).get(0);
+        assertThat(lock.keys()).containsExactly(KEY, KEY + ConcurrencyLockHandler.READERS_SUFFIX);
+        assertThat(lock.args()).containsExactly(ConcurrencyLockHandler.currentOwner(), "10000");
+        ScriptedRedisTemplate.Invocation unlock = redisTemplate.invocations(LuaScriptConstant.READ_WRITE_UN_LOCK).get(0);
+        assertThat(unlock.keys()).containsExactly(KEY, KEY + ConcurrencyLockHandler.READERS_SUFFIX);
+        assertThat(unlock.args()).containsExactly(ConcurrencyLockHandler.currentOwner(), "10000", ConcurrencyLockHandler.UNLOCK_CHANNEL);
+        assertThat(ConcurrencyLockContext.currentFencingToken()).isEmpty();
+    }
+
+    @Test
+    void should_PassFencingKeyAndWaitDeadline_When_WriteLockWaits() {
+        // Given - 第一次被读者占用，第二次获取成功
+        LockOptions options = new LockOptions(LockTypeEnum.WRITE, 1, 10_000, false, 1_000, true);
+        AtomicInteger attempts = new AtomicInteger();
+        redisTemplate.respond(LuaScriptConstant.WRITE_LOCK, invocation -> attempts.incrementAndGet() == 1 ? List.of(20L, 0L) : List.of(0L, 7L));
+
+        // When
+        boolean locked = handler.tryLock(KEY, options);
+
+        // Then
+        assertThat(locked).isTrue();
+        assertThat(ConcurrencyLockContext.currentFencingToken()).hasValue(7L);
+        List<ScriptedRedisTemplate.Invocation> invocations = redisTemplate.invocations(LuaScriptConstant.WRITE_LOCK);
+        assertThat(invocations).hasSize(2);
+        assertThat(invocations.get(0).keys()).containsExactly(KEY, KEY + ConcurrencyLockHandler.READERS_SUFFIX, KEY + ConcurrencyLockHandler.FENCING_SUFFIX);
+        // ARGV[3]是剩余的等待毫秒，写者用它阻止新的读者进入
+        assertThat(Long.parseLong(invocations.get(0).arg(2))).isBetween(1L, 1_000L);
+        assertThat(Long.parseLong(invocations.get(1).arg(2))).isLessThanOrEqualTo(Long.parseLong(invocations.get(0).arg(2)));
+        handler.unlock(KEY, options);
+        assertThat(redisTemplate.invocations(LuaScriptConstant.READ_WRITE_UN_LOCK).get(0).keys())
+                .containsExactly(KEY, KEY + ConcurrencyLockHandler.READERS_SUFFIX);
+        assertThat(ConcurrencyLockContext.currentFencingToken()).isEmpty();
+    }
+
+    @Test
+    void should_PassZeroWait_When_WriteLockDoesNotWait() {
+        // Given
+        LockOptions options = new LockOptions(LockTypeEnum.WRITE, 1, 10_000, false, 0, false);
+        redisTemplate.respondWith(LuaScriptConstant.WRITE_LOCK, List.of(20L, 0L));
+
+        // When
+        boolean locked = handler.tryLock(KEY, options);
+
+        // Then
+        assertThat(locked).isFalse();
+        ScriptedRedisTemplate.Invocation invocation = redisTemplate.invocations(LuaScriptConstant.WRITE_LOCK).get(0);
+        assertThat(invocation.keys()).containsExactly(KEY, KEY + ConcurrencyLockHandler.READERS_SUFFIX);
+        assertThat(invocation.arg(2)).isEqualTo("0");
+    }
+
+    @Test
+    void should_PassPermits_When_SemaphoreAcquiredAndReleased() {
+        // Given
+        LockOptions options = new LockOptions(LockTypeEnum.SEMAPHORE, 3, 10_000, false, 0, false);
+        redisTemplate.respondWith(LuaScriptConstant.SEMAPHORE_ACQUIRE, LOCKED);
+
+        // When
+        boolean locked = handler.tryLock(KEY, options);
+        handler.unlock(KEY, options);
+
+        // Then
+        assertThat(locked).isTrue();
+        ScriptedRedisTemplate.Invocation acquire = redisTemplate.invocations(LuaScriptConstant.SEMAPHORE_ACQUIRE).get(0);
+        assertThat(acquire.keys()).containsExactly(KEY);
+        assertThat(acquire.args()).hasSize(4);
+        assertThat(acquire.arg(0)).isEqualTo(ConcurrencyLockHandler.currentOwner());
+        assertThat(acquire.arg(1)).isEqualTo("10000");
+        assertThat(acquire.arg(2)).isEqualTo("3");
+        assertThat(acquire.arg(3)).isNotBlank();
+        ScriptedRedisTemplate.Invocation release = redisTemplate.invocations(LuaScriptConstant.SEMAPHORE_RELEASE).get(0);
+        assertThat(release.keys()).containsExactly(KEY);
+        assertThat(release.args()).containsExactly(ConcurrencyLockHandler.currentOwner(), "10000", ConcurrencyLockHandler.UNLOCK_CHANNEL);
+    }
+
+    @Test
+    void should_SkipLocalLockTable_When_LockIsShared() {
+        // Given
+        LocalLockTable localLockTable = new LocalLockTable();
+        ConcurrencyLockHandler localHandler = new ConcurrencyLockHandler(redisTemplate, null, notifier, localLockTable);
+        LockOptions read = new LockOptions(LockTypeEnum.READ, 1, 10_000, false, 0, false);
+        LockOptions semaphore = new LockOptions(LockTypeEnum.SEMAPHORE, 2, 10_000, false, 0, false);
+        LockOptions write = new LockOptions(LockTypeEnum.WRITE, 1, 10_000, false, 0, false);
+        redisTemplate.respondWith(LuaScriptConstant.READ_LOCK, LOCKED)
+                .respondWith(LuaScriptConstant.SEMAPHORE_ACQUIRE, LOCKED)
+                .respondWith(LuaScriptConstant.WRITE_LOCK, LOCKED);
+
+        // When & Then - 共享锁的多个持有者不能在本地互斥
+        assertThat(localHandler.tryLock("concurrency-lock:read", read)).isTrue();
+        assertThat(localHandler.tryLock("concurrency-lock:semaphore", semaphore)).isTrue();
+        assertThat(localLockTable.size()).isZero();
+        assertThat(localHandler.tryLock("concurrency-lock:write", write)).isTrue();
+        assertThat(localLockTable.size()).isEqualTo(1);
+        localHandler.unlock("concurrency-lock:write", write);
+        assertThat(localLockTable.size()).isZero();
+    }
+
+    @Test
+    @Timeout(10)
+    void should_WakeNextWaiter_When_SharedLockAcquiredAfterWaiting() throws InterruptedException {
+        // Given
+        LockOptions options = new LockOptions(LockTypeEnum.READ, 1, 10_000, false, 1_000, false);
+        AtomicInteger attempts = new AtomicInteger();
+        redisTemplate.respond(LuaScriptConstant.READ_LOCK, invocation -> attempts.incrementAndGet() == 1 ? List.of(20L, 0L) : LOCKED);
+        CountDownLatch woken = new CountDownLatch(1);
+        Thread waiter = startWaiter(woken);
+
+        // When
+        boolean locked = handler.tryLock(KEY, options);
+
+        // Then - 读锁可以同时持有，排在后面的等待者也应该去尝试
+        assertThat(locked).isTrue();
+        assertThat(woken.await(5, TimeUnit.SECONDS)).isTrue();
+        waiter.join();
+    }
+
+    @Test
+    @Timeout(10)
+    void should_NotWakeNextWaiter_When_ExclusiveLockAcquiredAfterWaiting() throws InterruptedException {
+        // Given
+        LockOptions options = new LockOptions(LockTypeEnum.EXCLUSIVE, 1, 10_000, false, 1_000, false);
+        AtomicInteger attempts = new AtomicInteger();
+        redisTemplate.respond(LuaScriptConstant.TRY_LOCK, invocation -> attempts.incrementAndGet() == 1 ? List.of(20L, 0L) : LOCKED);
+        CountDownLatch woken = new CountDownLatch(1);
+        Thread waiter = startWaiter(woken);
+
+        // When
+        boolean locked = handler.tryLock(KEY, options);
+
+        // Then - 互斥锁已被当前线程持有，下一个等待者等解锁通知
+        assertThat(locked).isTrue();
+        assertThat(woken.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        LockSupport.unpark(waiter);
+        waiter.join();
+    }
+
+    @Test
+    @Timeout(10)
+    void should_RenewByLockType_When_WatchdogTicks() throws InterruptedException {
+        // Given
+        redisTemplate.respondWith(LuaScriptConstant.READ_LOCK, LOCKED)
+                .respondWith(LuaScriptConstant.WRITE_LOCK, LOCKED)
+                .respondWith(LuaScriptConstant.SEMAPHORE_ACQUIRE, LOCKED);
+        try (ConcurrencyLockWatchdog watchdog = new ConcurrencyLockWatchdog(redisTemplate, Duration.ofMillis(50))) {
+            ConcurrencyLockHandler watchedHandler = new ConcurrencyLockHandler(redisTemplate, watchdog, notifier, null);
+            watchedHandler.tryLock("concurrency-lock:read", new LockOptions(LockTypeEnum.READ, 1, 300, true, 0, false));
+            watchedHandler.tryLock("concurrency-lock:write", new LockOptions(LockTypeEnum.WRITE, 1, 300, true, 0, false));
+            watchedHandler.tryLock("concurrency-lock:semaphore", new LockOptions(LockTypeEnum.SEMAPHORE, 2, 300, true, 0, false));
+
+            // When
+            while (redisTemplate.invocations(LuaScriptConstant.RENEW_READ_LOCK).isEmpty()) {
+                Thread.sleep(20);
+            }
+
+            // Then - 三把锁在同一个pipeline中续期
+            ScriptedRedisTemplate.Invocation read = redisTemplate.invocations(LuaScriptConstant.RENEW_READ_LOCK).get(0);
+            assertThat(read.keys()).containsExactly("concurrency-lock:read", "concurrency-lock:read" + ConcurrencyLockHandler.READERS_SUFFIX);
+            assertThat(read.args()).containsExactly(ConcurrencyLockHandler.currentOwner(), "300");
+            assertThat(redisTemplate.invocations(LuaScriptConstant.RENEW_LOCK).get(0).keys()).containsExactly("concurrency-lock:write");
+            assertThat(redisTemplate.invocations(LuaScriptConstant.SEMAPHORE_RENEW).get(0).keys()).containsExactly("concurrency-lock:semaphore");
+            assertThat(watchdog.size()).isEqualTo(3);
+        }
+    }
+
+    /**
+     * 启动一个已经排在KEY队首的等待者，被唤醒后计数
+     */
+    private Thread startWaiter(CountDownLatch woken) throws InterruptedException {
+        CountDownLatch subscribed = new CountDownLatch(1);
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            notifier.subscribe(KEY);
+            subscribed.countDown();
+            LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(5));
+            notifier.unsubscribe(KEY, false);
+            woken.countDown();
+        });
+        subscribed.await();
+        return waiter;
+    }
+}
@@ -0,0 +1,91 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * ConcurrencyLockWatchdog单元测试类
+ *
+ * 【强制】测试看门狗登记表在重入、释放和不同持有者下的正确性
+ * 【强制】测试续期时机：最晚一个检查间隔之后续期也要在锁过期之前到达
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class ConcurrencyLockWatchdogTest {
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+
+    @Test
+    void should_KeepWatching_When_ReentrantLockPartiallyReleased() {
+        // Given
+        try (ConcurrencyLockWatchdog watchdog = new ConcurrencyLockWatchdog(redisTemplate, Duration.ofHours(1))) {
+            watchdog.watch("concurrency-lock:order", "owner-1", 10_000);
+            watchdog.watch("concurrency-lock:order", "owner-1", 10_000);
+
+            // When
+            watchdog.unwatch("concurrency-lock:order", "owner-1");
+
+            // Then
+            assertThat(watchdog.size()).isEqualTo(1);
+            watchdog.unwatch("concurrency-lock:order", "owner-1");
+            assertThat(watchdog.size()).isZero();
+        }
+    }
+
+    @Test
+    void should_IgnoreUnwatch_When_OwnerDiffers() {
+        // Given
+        try (ConcurrencyLockWatchdog watchdog = new ConcurrencyLockWatchdog(redisTemplate, Duration.ofHours(1))) {
+            watchdog.watch("concurrency-lock:order", "owner-1", 10_000);
+
+            // When
+            watchdog.unwatch("concurrency-lock:order", "owner-2");
+
+            // Then
+            assertThat(watchdog.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void should_RenewAtOneThirdOfExpiration_When_IntervalIsShort() {
+        // Given
+        try (ConcurrencyLockWatchdog watchdog = new ConcurrencyLockWatchdog(redisTemplate, Duration.ofSeconds(1))) {
+            // When & Then
+            assertThat(watchdog.renewAfterMillis(30_000)).isEqualTo(10_000);
+        }
+    }
+
+    @Test
+    void should_RenewBeforeExpirationMinusInterval_When_IntervalIsLongForLease() {
+        // Given - 检查间隔1秒，过期时间3秒：三分之一过期时间后续期，最晚在2秒时才被检查到
+        try (ConcurrencyLockWatchdog watchdog = new ConcurrencyLockWatchdog(redisTemplate, Duration.ofSeconds(1))) {
+            // When
+            long renewAfter = watchdog.renewAfterMillis(3_000);
+
+            // Then - 续期最晚在 renewAfter + interval 时发出，还留有十分之一过期时间的余量
+            assertThat(renewAfter).isEqualTo(1_000);
+            assertThat(renewAfter + 1_000 + 300).isLessThanOrEqualTo(3_000);
+            assertThat(watchdog.renewAfterMillis(1_500)).isEqualTo(350);
+        }
+    }
+
+    @Test
+    void should_RenewEveryTick_When_ExpirationShorterThanInterval() {
+        // Given
+        try (ConcurrencyLockWatchdog watchdog = new ConcurrencyLockWatchdog(redisTemplate, Duration.ofSeconds(1))) {
+            // When
+            watchdog.watch("concurrency-lock:order", "owner-1", 1_000);
+
+            // Then - 来不及续期，每个tick都续期并在登记时警告
+            assertThat(watchdog.renewAfterMillis(1_000)).isZero();
+            assertThat(watchdog.size()).isEqualTo(1);
+        }
+    }
+}
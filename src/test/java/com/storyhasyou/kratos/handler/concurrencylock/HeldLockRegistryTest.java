@@ -0,0 +1,50 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.enums.LockTypeEnum;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HeldLockRegistry单元测试类
+ *
+ * 【强制】测试持有中的锁在登记、重入和释放后的正确性
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class HeldLockRegistryTest {
+
+    @Test
+    void should_ListOldestFirst_When_SeveralLocksHeld() throws InterruptedException {
+        // Given
+        HeldLockRegistry registry = new HeldLockRegistry();
+        registry.register("concurrency-lock:order", LockTypeEnum.EXCLUSIVE);
+        Thread.sleep(5);
+
+        // When
+        registry.register("concurrency-lock:stock", LockTypeEnum.READ);
+
+        // Then
+        assertThat(registry.heldLocks())
+                .extracting(HeldLockRegistry.HeldLock::key)
+                .containsExactly("concurrency-lock:order", "concurrency-lock:stock");
+        assertThat(registry.heldLocks().get(0).thread()).isEqualTo(Thread.currentThread().getName());
+    }
+
+    @Test
+    void should_KeepOuterEntry_When_ReentrantInnerReleased() {
+        // Given
+        HeldLockRegistry registry = new HeldLockRegistry();
+        long outer = registry.register("concurrency-lock:order", LockTypeEnum.EXCLUSIVE);
+        long inner = registry.register("concurrency-lock:order", LockTypeEnum.EXCLUSIVE);
+
+        // When
+        registry.release(inner);
+
+        // Then
+        assertThat(registry.size()).isEqualTo(1);
+        registry.release(outer);
+        assertThat(registry.size()).isZero();
+    }
+}
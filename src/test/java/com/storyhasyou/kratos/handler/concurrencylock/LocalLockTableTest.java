@@ -0,0 +1,81 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * LocalLockTable单元测试类
+ *
+ * 【强制】测试本地锁表的互斥、重入、排队等待以及空闲key的清理
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class LocalLockTableTest {
+
+    @Test
+    void should_FailFast_When_HeldByAnotherThread() throws Exception {
+        // Given
+        LocalLockTable table = new LocalLockTable();
+        assertThat(table.tryLock("order:1", 0)).isTrue();
+
+        // When
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            boolean locked = executor.submit(() -> table.tryLock("order:1", 0)).get();
+            boolean otherKeyLocked = executor.submit(() -> {
+                boolean result = table.tryLock("order:2", 0);
+                table.unlock("order:2");
+                return result;
+            }).get();
+
+            // Then
+            assertThat(locked).isFalse();
+            assertThat(otherKeyLocked).isTrue();
+        }
+        table.unlock("order:1");
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void should_Reenter_When_HeldByCurrentThread() {
+        // Given
+        LocalLockTable table = new LocalLockTable();
+        assertThat(table.tryLock("order:1", 0)).isTrue();
+
+        // When
+        boolean reentered = table.tryLock("order:1", 0);
+
+        // Then
+        assertThat(reentered).isTrue();
+        table.unlock("order:1");
+        assertThat(table.size()).isEqualTo(1);
+        table.unlock("order:1");
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void should_AcquireAfterRelease_When_WaitingInProcess() throws Exception {
+        // Given
+        LocalLockTable table = new LocalLockTable();
+        assertThat(table.tryLock("order:1", 0)).isTrue();
+
+        // When
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            boolean locked = table.tryLock("order:1", 5_000);
+            table.unlock("order:1");
+            return locked;
+        });
+        Thread.sleep(50);
+        table.unlock("order:1");
+
+        // Then
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(table.size()).isZero();
+    }
+}
@@ -0,0 +1,71 @@
+package com.storyhasyou.kratos.handler.concurrencylock;
+
+import com.storyhasyou.kratos.enums.LockTypeEnum;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * LockOptions单元测试类
+ *
+ * 【强制】测试每种锁类型的fencing、本地互斥和共享语义，以及非法参数的校验
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class LockOptionsTest {
+
+    @Test
+    void should_KeepFencingAndLockLocally_When_TypeIsExclusiveOrWrite() {
+        // Given
+        LockOptions exclusive = new LockOptions(LockTypeEnum.EXCLUSIVE, 1, 10_000, false, 0, true);
+        LockOptions write = new LockOptions(LockTypeEnum.WRITE, 1, 10_000, false, 0, true);
+
+        // When & Then
+        assertThat(exclusive.fencing()).isTrue();
+        assertThat(exclusive.localExclusive()).isTrue();
+        assertThat(exclusive.shared()).isFalse();
+        assertThat(write.fencing()).isTrue();
+        assertThat(write.localExclusive()).isTrue();
+        assertThat(write.shared()).isFalse();
+    }
+
+    @Test
+    void should_DropFencingAndShare_When_TypeIsReadOrSemaphore() {
+        // Given
+        LockOptions read = new LockOptions(LockTypeEnum.READ, 1, 10_000, false, 0, true);
+        LockOptions semaphore = new LockOptions(LockTypeEnum.SEMAPHORE, 3, 10_000, false, 0, true);
+
+        // When & Then - 多个持有者同时持有时fencing token没有意义
+        assertThat(read.fencing()).isFalse();
+        assertThat(read.localExclusive()).isFalse();
+        assertThat(read.shared()).isTrue();
+        assertThat(semaphore.fencing()).isFalse();
+        assertThat(semaphore.localExclusive()).isFalse();
+        assertThat(semaphore.shared()).isTrue();
+    }
+
+    @Test
+    void should_IgnorePermits_When_TypeIsNotSemaphore() {
+        // Given & When
+        LockOptions read = new LockOptions(LockTypeEnum.READ, 0, 10_000, false, 0, false);
+
+        // Then
+        assertThat(read.permits()).isZero();
+    }
+
+    @Test
+    void should_Throw_When_ExpireMillisIsNotPositive() {
+        // Given & When & Then
+        assertThatThrownBy(() -> new LockOptions(LockTypeEnum.WRITE, 1, 0, false, 0, false))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void should_Throw_When_SemaphorePermitsIsNotPositive() {
+        // Given & When & Then
+        assertThatThrownBy(() -> new LockOptions(LockTypeEnum.SEMAPHORE, 0, 10_000, false, 0, false))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
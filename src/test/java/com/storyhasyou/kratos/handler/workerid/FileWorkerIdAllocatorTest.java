@@ -0,0 +1,66 @@
+package com.storyhasyou.kratos.handler.workerid;
+
+import com.storyhasyou.kratos.toolkit.Sequence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * FileWorkerIdAllocator单元测试类
+ *
+ * 【强制】测试本地文件兜底时节点号的沿用和推算
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class FileWorkerIdAllocatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void should_ReuseCachedNodeId_When_FileExists() throws IOException {
+        // Given
+        Path file = tempDir.resolve("worker-id");
+        Files.writeString(file, "512");
+
+        // When
+        long nodeId = new FileWorkerIdAllocator(file).allocate(Sequence.MAX_NODE_ID);
+
+        // Then
+        assertThat(nodeId).isEqualTo(512L);
+    }
+
+    @Test
+    void should_DeriveAndStoreNodeId_When_FileMissing() throws IOException {
+        // Given
+        Path file = tempDir.resolve("cache").resolve("worker-id");
+        FileWorkerIdAllocator allocator = new FileWorkerIdAllocator(file);
+
+        // When
+        long nodeId = allocator.allocate(Sequence.MAX_NODE_ID);
+
+        // Then
+        assertThat(nodeId).isBetween(0L, Sequence.MAX_NODE_ID);
+        assertThat(Files.readString(file)).isEqualTo(String.valueOf(nodeId));
+        assertThat(allocator.allocate(Sequence.MAX_NODE_ID)).isEqualTo(nodeId);
+    }
+
+    @Test
+    void should_IgnoreCachedNodeId_When_OutOfRange() throws IOException {
+        // Given
+        Path file = tempDir.resolve("worker-id");
+        Files.writeString(file, "4096");
+
+        // When
+        long nodeId = new FileWorkerIdAllocator(file).allocate(Sequence.MAX_NODE_ID);
+
+        // Then
+        assertThat(nodeId).isBetween(0L, Sequence.MAX_NODE_ID);
+    }
+}
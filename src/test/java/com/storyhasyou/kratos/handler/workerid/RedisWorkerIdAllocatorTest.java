@@ -0,0 +1,183 @@
+package com.storyhasyou.kratos.handler.workerid;
+
+import com.storyhasyou.kratos.handler.ScriptedRedisTemplate;
+import com.storyhasyou.kratos.toolkit.LuaScriptConstant;
+import com.storyhasyou.kratos.toolkit.Sequence;
+import com.storyhasyou.kratos.toolkit.SequenceLayout;
+import com.storyhasyou.kratos.utils.IdUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * RedisWorkerIdAllocator单元测试类
+ *
+ * 【强制】测试租约被抢占、续租超时和本地文件兜底时节点号的切换，保证不会继续使用失效的节点号
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class RedisWorkerIdAllocatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ScriptedRedisTemplate redisTemplate = new ScriptedRedisTemplate().respondWith(LuaScriptConstant.RELEASE_WORKER_ID, 1L);
+
+    @AfterEach
+    void tearDown() {
+        IdUtils.resume();
+        IdUtils.clearLeaseDeadline();
+    }
+
+    @Test
+    void should_LeaseNewNodeId_When_LeaseTakenByAnotherInstance() {
+        // Given
+        redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 5L);
+        try (RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, Duration.ofHours(1), null)) {
+            IdUtils.initialize(allocator);
+            redisTemplate.respond(LuaScriptConstant.RENEW_WORKER_ID, invocation -> 0L);
+            redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 7L);
+
+            // When
+            allocator.heartbeat();
+
+            // Then
+            assertThat(allocator.getNodeId()).isEqualTo(7L);
+            assertThat(allocator.isLeased()).isTrue();
+            assertThat(SequenceLayout.DEFAULT.nodeId(IdUtils.getId())).isEqualTo(7L);
+        }
+    }
+
+    @Test
+    void should_SuspendIdGeneration_When_LeaseLostAndRedisUnavailable() {
+        // Given
+        redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 5L);
+        try (RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, Duration.ofHours(1), null)) {
+            IdUtils.initialize(allocator);
+            redisTemplate.respond(LuaScriptConstant.RENEW_WORKER_ID, invocation -> 0L);
+            redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> {
+                throw new IllegalStateException("redis unavailable");
+            });
+
+            // When
+            allocator.heartbeat();
+
+            // Then
+            assertThat(allocator.isLeased()).isFalse();
+            assertThatThrownBy(IdUtils::getId).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void should_SuspendUntilRenewed_When_LeaseNotRenewedInTime() throws InterruptedException {
+        // Given
+        redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 5L);
+        try (RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, Duration.ofMillis(30), null)) {
+            IdUtils.initialize(allocator);
+            redisTemplate.respond(LuaScriptConstant.RENEW_WORKER_ID, invocation -> {
+                throw new IllegalStateException("redis unavailable");
+            });
+            Thread.sleep(40);
+
+            // When
+            allocator.heartbeat();
+
+            // Then
+            assertThatThrownBy(IdUtils::getId).isInstanceOf(IllegalStateException.class);
+            redisTemplate.respond(LuaScriptConstant.RENEW_WORKER_ID, invocation -> 1L);
+            allocator.heartbeat();
+            assertThat(SequenceLayout.DEFAULT.nodeId(IdUtils.getId())).isEqualTo(5L);
+        }
+    }
+
+    @Test
+    void should_RejectIds_When_HeartbeatStalledPastDeadline() throws InterruptedException {
+        // Given - 不执行心跳，模拟续租卡住或心跳线程停顿
+        redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 5L);
+        try (RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, Duration.ofMillis(100), null)) {
+            IdUtils.initialize(allocator);
+            assertThat(SequenceLayout.DEFAULT.nodeId(IdUtils.getId())).isEqualTo(5L);
+
+            // When
+            Thread.sleep(100);
+
+            // Then
+            assertThatThrownBy(IdUtils::getId).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void should_ReturnBeforeLeaseExpires_When_RenewHangs() {
+        // Given
+        redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 5L);
+        try (RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, Duration.ofMillis(600), null)) {
+            IdUtils.initialize(allocator);
+            redisTemplate.respond(LuaScriptConstant.RENEW_WORKER_ID, invocation -> {
+                try {
+                    Thread.sleep(Duration.ofSeconds(10));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1L;
+            });
+
+            // When
+            long start = System.nanoTime();
+            allocator.heartbeat();
+
+            // Then - 命令最多等待续租间隔的一半
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(600));
+            assertThat(allocator.isLeased()).isTrue();
+        }
+    }
+
+    @Test
+    void should_TreatAsLeaseLost_When_RenewReturnsNull() {
+        // Given
+        redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 5L);
+        try (RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, Duration.ofHours(1), null)) {
+            IdUtils.initialize(allocator);
+            redisTemplate.respond(LuaScriptConstant.RENEW_WORKER_ID, invocation -> null);
+            redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 7L);
+
+            // When
+            allocator.heartbeat();
+
+            // Then
+            assertThat(allocator.getNodeId()).isEqualTo(7L);
+            assertThat(SequenceLayout.DEFAULT.nodeId(IdUtils.getId())).isEqualTo(7L);
+        }
+    }
+
+    @Test
+    void should_LeaseFromRedis_When_StartedWithFileFallback() throws IOException {
+        // Given
+        Path file = tempDir.resolve("worker-id");
+        Files.writeString(file, "512");
+        redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> {
+            throw new IllegalStateException("redis unavailable");
+        });
+        try (RedisWorkerIdAllocator allocator = new RedisWorkerIdAllocator(redisTemplate, Duration.ofHours(1), new FileWorkerIdAllocator(file))) {
+            IdUtils.initialize(allocator);
+            assertThat(allocator.isLeased()).isFalse();
+            redisTemplate.respond(LuaScriptConstant.ALLOCATE_WORKER_ID, invocation -> 9L);
+
+            // When
+            allocator.heartbeat();
+
+            // Then
+            assertThat(allocator.isLeased()).isTrue();
+            assertThat(SequenceLayout.DEFAULT.nodeId(IdUtils.getId())).isEqualTo(9L);
+            assertThat(new FileWorkerIdAllocator(file).allocate(Sequence.MAX_NODE_ID)).isEqualTo(9L);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.storyhasyou.kratos.toolkit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * CachedSequence单元测试类
+ *
+ * 【强制】测试环形缓冲区在并发取号、借用未来时间时ID的唯一性和递增性
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class CachedSequenceTest {
+
+    @Test
+    @Timeout(30)
+    void should_GenerateUniqueIncreasingIds_When_ConcurrentConsumers() throws Exception {
+        // Given
+        int threadCount = 8;
+        int idsPerThread = 50000;
+        Set<Long> allIds = Collections.synchronizedSet(new HashSet<>());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try (CachedSequence cachedSequence = new CachedSequence(new Sequence(1L, 100L, true, 5L, false), 1 << 12)) {
+            // When
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    long previous = 0L;
+                    for (int j = 0; j < idsPerThread; j++) {
+                        long id = cachedSequence.nextId();
+                        if (id <= previous) {
+                            return false;
+                        }
+                        previous = id;
+                        allIds.add(id);
+                    }
+                    return true;
+                }));
+            }
+
+            // Then - 每个线程内递增，全部线程之间唯一
+            for (Future<Boolean> future : futures) {
+                assertThat(future.get()).isTrue();
+            }
+            assertThat(allIds).hasSize(threadCount * idsPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void should_WaitForClock_When_BorrowLimitReached() throws Exception {
+        // Given - 不允许借用未来时间，取号速度超过每毫秒的序列数时取号线程需要挂起等待时钟
+        int threadCount = 8;
+        int idsPerThread = 20000;
+        Set<Long> allIds = Collections.synchronizedSet(new HashSet<>());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try (CachedSequence cachedSequence = new CachedSequence(new Sequence(1L, 100L, true, 5L, false), 1 << 12, 0L)) {
+            // When
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < idsPerThread; j++) {
+                        allIds.add(cachedSequence.nextId());
+                    }
+                }));
+            }
+
+            // Then
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertThat(allIds).hasSize(threadCount * idsPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void should_StartAfterLastIssuedId_When_SequenceAlreadyUsed() {
+        // Given
+        Sequence sequence = new Sequence(1L, 100L, false, 5L, false);
+        long issued = sequence.nextId();
+
+        // When
+        try (CachedSequence cachedSequence = new CachedSequence(sequence, 16)) {
+            // Then
+            assertThat(cachedSequence.nextId()).isGreaterThan(issued);
+        }
+    }
+
+    @Test
+    void should_ThrowException_When_BufferSizeTooSmall() {
+        // When & Then
+        assertThatThrownBy(() -> new CachedSequence(new Sequence(), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,69 @@
+package com.storyhasyou.kratos.toolkit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SequenceLayout单元测试类
+ *
+ * 【强制】测试自定义位布局下ID的生成和解析
+ * 【强制】测试方法命名遵循规范：should_ReturnExpected_When_GivenInput()
+ *
+ * @author fangxi
+ */
+public class SequenceLayoutTest {
+
+    @Test
+    void should_DecodeComponents_When_DefaultLayout() {
+        // Given
+        Sequence sequence = new Sequence(2L, 100L, false, 5L, false);
+        long before = System.currentTimeMillis();
+
+        // When
+        long id = sequence.nextId();
+        SequenceLayout.DecodedId decoded = sequence.layout().decode(id);
+
+        // Then
+        assertThat(decoded.dataCenterId()).isEqualTo(2L);
+        assertThat(decoded.workerId()).isEqualTo(100L);
+        assertThat(decoded.sequence()).isZero();
+        assertThat(decoded.timestamp()).isBetween(before, System.currentTimeMillis());
+        assertThat(sequence.layout().nodeId(id)).isEqualTo((2L << 8) | 100L);
+    }
+
+    @Test
+    void should_UseWiderSequence_When_CustomLayout() {
+        // Given - 14位序列每毫秒16384个，10位workerId
+        SequenceLayout layout = new SequenceLayout(1700000000000L, 0, 10, 14);
+        Sequence sequence = new Sequence(layout, 0L, 1023L, false, 5L, false);
+
+        // When
+        long[] ids = sequence.nextIds(10000);
+
+        // Then
+        assertThat(layout.timestamp(ids[9999]) - layout.timestamp(ids[0])).isLessThanOrEqualTo(1L);
+        assertThat(layout.workerId(ids[0])).isEqualTo(1023L);
+        assertThat(layout.maxNodeId()).isEqualTo(1023L);
+        assertThat(layout.timestampBits()).isEqualTo(39);
+    }
+
+    @Test
+    void should_ThrowException_When_WorkerIdExceedsCustomLayout() {
+        // Given
+        SequenceLayout layout = new SequenceLayout(1700000000000L, 0, 4, 16);
+
+        // When & Then
+        assertThatThrownBy(() -> new Sequence(layout, 0L, 16L, true, 5L, false))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Worker Id can't be greater than 15");
+    }
+
+    @Test
+    void should_ThrowException_When_TimestampBitsTooFew() {
+        // When & Then
+        assertThatThrownBy(() -> new SequenceLayout(0L, 10, 10, 12))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
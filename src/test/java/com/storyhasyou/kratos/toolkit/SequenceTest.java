@@ -164,6 +164,21 @@ public class SequenceTest {
         assertThat(id).isPositive();
     }
 
+    @Test
+    void should_SplitNodeIdIntoDataCenterAndWorker_When_OfNodeId() {
+        // Given - 节点号1023 = dataCenterId 3、workerId 255
+        Sequence fromNodeId = Sequence.ofNodeId(Sequence.MAX_NODE_ID);
+        Sequence explicit = new Sequence(3L, 255L, true, 5L, false);
+
+        // When
+        long nodeBits = fromNodeId.nextId() & (Sequence.MAX_NODE_ID << 12);
+
+        // Then
+        assertThat(nodeBits).isEqualTo(explicit.nextId() & (Sequence.MAX_NODE_ID << 12));
+        assertThatThrownBy(() -> Sequence.ofNodeId(Sequence.MAX_NODE_ID + 1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
     // ==================== IP地址获取测试 ====================
 
     @Test
@@ -282,6 +297,58 @@ public class SequenceTest {
         assertThat(normalIds).allMatch(id -> id > 0);
     }
 
+    @Test
+    void should_GenerateUniqueIds_When_RandomSequenceExhaustsMillisecond() {
+        // Given - 单毫秒内的取号数超过4096，随机起始值的序列用完后进入下一毫秒
+        Sequence sequence = new Sequence(1L, 100L, false, 5L, true);
+        int idCount = 20000;
+
+        // When
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < idCount; i++) {
+            ids.add(sequence.nextId());
+        }
+
+        // Then
+        assertThat(ids).hasSize(idCount);
+    }
+
+    // ==================== 批量获取测试 ====================
+
+    @Test
+    void should_ReturnIncreasingUniqueIds_When_NextIdsSpansMilliseconds() {
+        // Given - 超过单毫秒4096个序列，需要跨毫秒预留
+        Sequence sequence = new Sequence(1L, 100L, false, 5L, false);
+        int idCount = 10000;
+
+        // When
+        long[] ids = sequence.nextIds(idCount);
+
+        // Then
+        assertThat(ids).hasSize(idCount);
+        for (int i = 1; i < ids.length; i++) {
+            assertThat(ids[i]).isGreaterThan(ids[i - 1]);
+        }
+        assertThat(sequence.nextId()).isGreaterThan(ids[idCount - 1]);
+    }
+
+    @Test
+    void should_FillOnlyRequestedRange_When_BufferProvided() {
+        // Given
+        Sequence sequence = new Sequence();
+        long[] buffer = new long[10];
+
+        // When
+        sequence.nextIds(buffer, 2, 5);
+
+        // Then
+        assertThat(buffer[0]).isZero();
+        assertThat(buffer[1]).isZero();
+        assertThat(Arrays.stream(buffer, 2, 7)).allMatch(id -> id > 0).doesNotHaveDuplicates();
+        assertThat(buffer[7]).isZero();
+        assertThatThrownBy(() -> sequence.nextIds(buffer, 8, 5)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
     // ==================== 线程安全性测试（重要！）====================
 
     @Test
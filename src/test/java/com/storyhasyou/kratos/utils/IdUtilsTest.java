@@ -2,6 +2,11 @@ package com.storyhasyou.kratos.utils;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * @author 方曦 created by 2020/12/9
  */
@@ -18,6 +23,41 @@ public class IdUtilsTest {
         System.out.println(IdUtils.getTimeId());
     }
 
+    @Test
+    void should_MatchFormatterOutput_When_GetTimeId() {
+        // Given
+        LocalDateTime before = DateUtils.now().withNano(0);
+
+        // When
+        String timeId = IdUtils.getTimeId();
+
+        // Then
+        LocalDateTime after = DateUtils.now();
+        String prefix = timeId.substring(0, 17);
+        LocalDateTime parsed = LocalDateTime.parse(prefix, IdUtils.MILLISECOND);
+        assertThat(timeId).containsOnlyDigits();
+        assertThat(Long.parseLong(timeId.substring(17))).isPositive();
+        assertThat(parsed).isBetween(before, after);
+        assertThat(Duration.between(parsed, after)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void should_KeepIncreasing_When_InitializedWithSameNodeId() {
+        // Given
+        IdUtils.initialize(max -> 3L);
+        long previous = IdUtils.getId();
+
+        for (int i = 0; i < 1000; i++) {
+            // When - 同一节点号重复初始化不能丢失序列状态
+            IdUtils.initialize(max -> 3L);
+            long id = IdUtils.getId();
+
+            // Then
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+    }
+
     @Test
     public void uuid() {
     }
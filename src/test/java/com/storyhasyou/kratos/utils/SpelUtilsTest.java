@@ -8,9 +8,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.expression.Expression;
 
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.lenient;
@@ -499,6 +501,48 @@ public class SpelUtilsTest {
         System.out.println("SPEL解析性能测试: " + (expressions.length * 10000) + " 次解析耗时 " + elapsedTime + "ms");
     }
 
+    // ==================== 表达式缓存测试 ====================
+
+    @Test
+    void should_ParseWithDiscoveredNames_When_GivenMethodAndArgs() throws NoSuchMethodException {
+        // Given
+        Method method = TestClass.class.getMethod("getUserFullName", String.class, String.class);
+        Object[] args = {"John", "Doe"};
+
+        // When
+        String result = SpelUtils.parse(method, args, "#firstName + '_' + #lastName");
+
+        // Then
+        assertThat(result).isEqualTo("John_Doe");
+    }
+
+    @Test
+    void should_ReturnFreshResult_When_SameExpressionEvaluatedRepeatedly() throws NoSuchMethodException {
+        // Given - 编译后的表达式在参数类型变化时需要回退到解释执行
+        Method method = TestClass.class.getMethod("testMethod", Object.class, Object.class);
+        String expression = "#param1 + '_' + #param2";
+
+        // When & Then
+        for (int i = 0; i < 200; i++) {
+            assertThat(SpelUtils.parse(method, new Object[]{"user", i}, expression)).isEqualTo("user_" + i);
+        }
+        assertThat(SpelUtils.parse(method, new Object[]{1L, "x"}, expression)).isEqualTo("1_x");
+        assertThat(SpelUtils.parse(method, new Object[]{new BigDecimal("1.5"), "x"}, expression)).isEqualTo("1.5_x");
+    }
+
+    @Test
+    void should_ReturnRawCollection_When_EvaluatingValue() throws NoSuchMethodException {
+        // Given
+        Method method = TestClass.class.getMethod("testMethod", Object.class, Object.class);
+        Expression expression = SpelUtils.parseExpression(method, "#param1");
+
+        // When
+        Object result = SpelUtils.evaluateValue(expression, new String[]{"param1", "param2"}, new Object[]{List.of("a", "b"), null});
+
+        // Then
+        assertThat(result).isEqualTo(List.of("a", "b"));
+    }
+
     // ==================== 辅助方法 ====================
 
     private void setupMockJoinPoint(Object[] args, String[] paramNames, String methodName, Class<?>... paramTypes) 